@@ -0,0 +1,170 @@
+package com.google.developer.taskmaker;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.preference.PreferenceManager;
+
+import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.DatabaseContract.MetricsColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static android.support.test.espresso.Espresso.onView;
+import static android.support.test.espresso.Espresso.openActionBarOverflowOrOptionsMenu;
+import static android.support.test.espresso.Espresso.pressBack;
+import static android.support.test.espresso.action.ViewActions.click;
+import static android.support.test.espresso.matcher.ViewMatchers.withText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the provider queries made by the task list while navigating away and
+ * back, as recorded by the provider metrics. Loaders run on their own executor,
+ * which Espresso doesn't wait for, so each step waits a fixed time for any
+ * reload to finish.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainActivityReloadTest {
+
+    private static final long SETTLE_MS = 1000;
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private Context mContext;
+    private Uri mTaskUri;
+    private String mSortBy;
+    private boolean mMetricsEnabled;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        ContentResolver resolver = mContext.getContentResolver();
+
+        ContentValues values = new ContentValues();
+        values.put(DatabaseContract.TaskColumns.DESCRIPTION, "Reload test task");
+        values.put(DatabaseContract.TaskColumns.IS_COMPLETE, 0);
+        values.put(DatabaseContract.TaskColumns.IS_PRIORITY, 0);
+        values.putNull(DatabaseContract.TaskColumns.DUE_DATE);
+        mTaskUri = resolver.insert(DatabaseContract.CONTENT_URI, values);
+
+        //Release builds only record metrics on request
+        mMetricsEnabled = setMetricsEnabled(null);
+        setMetricsEnabled("true");
+
+        mSortBy = getPreferences().getString(mContext.getString(R.string.pref_sortBy_key),
+                mContext.getString(R.string.pref_sortBy_default));
+        setSortBy(mContext.getString(R.string.pref_sortBy_default));
+
+        mActivityRule.launchActivity(null);
+        settle();
+    }
+
+    @After
+    public void tearDown() {
+        setSortBy(mSortBy);
+        if (mTaskUri != null) {
+            mContext.getContentResolver().delete(mTaskUri, null, null);
+        }
+        setMetricsEnabled(String.valueOf(mMetricsEnabled));
+    }
+
+    @Test
+    public void returnFromSettingsRunsNoQuery() {
+        long before = getQueryCount();
+
+        openActionBarOverflowOrOptionsMenu(mContext);
+        onView(withText(R.string.settings)).perform(click());
+        settle();
+        pressBack();
+        settle();
+
+        assertEquals(before, getQueryCount());
+    }
+
+    @Test
+    public void returnFromDetailRunsOnlyTheDetailQuery() {
+        long before = getQueryCount();
+
+        Intent intent = new Intent(mContext, TaskDetailActivity.class);
+        intent.setData(mTaskUri);
+        mActivityRule.getActivity().startActivity(intent);
+        settle();
+        pressBack();
+        settle();
+
+        assertEquals(before + 1, getQueryCount());
+    }
+
+    @Test
+    public void sortChangeReloadsList() {
+        long before = getQueryCount();
+
+        setSortBy(mContext.getString(R.string.pref_sortBy_due));
+        settle();
+
+        assertTrue(getQueryCount() > before);
+    }
+
+    /* Number of queries the provider has recorded, over every route */
+    private long getQueryCount() {
+        Cursor metrics = mContext.getContentResolver().query(DatabaseContract.METRICS_URI,
+                null, null, null, null);
+        long count = 0;
+        try {
+            while (metrics.moveToNext()) {
+                if ("query".equals(metrics.getString(
+                        metrics.getColumnIndexOrThrow(MetricsColumns.OPERATION)))) {
+                    count += metrics.getLong(metrics.getColumnIndexOrThrow(MetricsColumns.COUNT));
+                }
+            }
+        } finally {
+            metrics.close();
+        }
+        return count;
+    }
+
+    /* Turn metrics on or off, or only read their state with a null argument */
+    private boolean setMetricsEnabled(String enabled) {
+        Bundle state = mContext.getContentResolver().call(DatabaseContract.CONTENT_URI,
+                DatabaseContract.METHOD_SET_METRICS_ENABLED, enabled, null);
+        return state != null && state.getBoolean(DatabaseContract.KEY_METRICS_ENABLED);
+    }
+
+    private SharedPreferences getPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    private void setSortBy(final String sortBy) {
+        //Listeners are called on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                getPreferences().edit()
+                        .putString(mContext.getString(R.string.pref_sortBy_key), sortBy)
+                        .commit();
+            }
+        });
+    }
+
+    private static void settle() {
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        SystemClock.sleep(SETTLE_MS);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+}
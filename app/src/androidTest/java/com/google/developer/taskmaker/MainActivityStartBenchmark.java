@@ -0,0 +1,131 @@
+package com.google.developer.taskmaker;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.ViewTreeObserver;
+
+import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.TaskSnapshotStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time from launching the task list to the first frame drawn with
+ * rows in it, without and with the warm start snapshot. The provider stays open
+ * in the test process, so the cold numbers leave out opening the database and
+ * understate the difference on a real cold start.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainActivityStartBenchmark {
+    private static final String TAG = MainActivityStartBenchmark.class.getSimpleName();
+
+    private static final int TASKS = 200;
+    private static final int RUNS = 5;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private Context mContext;
+    private final List<Uri> mTaskUris = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < TASKS; i++) {
+            values.put(DatabaseContract.TaskColumns.DESCRIPTION, "Start benchmark task " + i);
+            values.put(DatabaseContract.TaskColumns.IS_COMPLETE, 0);
+            values.put(DatabaseContract.TaskColumns.IS_PRIORITY, i % 3 == 0 ? 1 : 0);
+            values.put(DatabaseContract.TaskColumns.DUE_DATE, System.currentTimeMillis() + i);
+            mTaskUris.add(mContext.getContentResolver().insert(DatabaseContract.CONTENT_URI, values));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (Uri uri : mTaskUris) {
+            mContext.getContentResolver().delete(uri, null, null);
+        }
+    }
+
+    @Test
+    public void timeToFirstFrameWithRows() throws InterruptedException {
+        long[] cold = new long[RUNS];
+        long[] warm = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            TaskSnapshotStore.clear(mContext);
+            cold[i] = launchAndWaitForRows();
+
+            //The previous launch saved the first screen
+            warm[i] = launchAndWaitForRows();
+        }
+
+        long coldMedian = median(cold);
+        long warmMedian = median(warm);
+        //Launch timings vary too much between runs and devices to assert on
+        Log.i(TAG, String.format("First frame with rows: without snapshot %dms, with snapshot %dms",
+                coldMedian, warmMedian));
+    }
+
+    /* Launch the list and return the milliseconds until a frame with rows is drawn */
+    private long launchAndWaitForRows() throws InterruptedException {
+        final CountDownLatch drawn = new CountDownLatch(1);
+        final long[] drawnAt = new long[1];
+
+        long start = SystemClock.elapsedRealtime();
+        MainActivity activity = mActivityRule.launchActivity(null);
+        final RecyclerView list = (RecyclerView) activity.findViewById(R.id.recycler_view);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                list.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+                    @Override
+                    public void onDraw() {
+                        if (drawn.getCount() > 0 && list.getChildCount() > 0) {
+                            drawnAt[0] = SystemClock.elapsedRealtime();
+                            drawn.countDown();
+                        }
+                    }
+                });
+                //Rows may already be on screen, draw again to check
+                list.invalidate();
+            }
+        });
+
+        assertTrue("No rows drawn", drawn.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        activity.finish();
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        //Let the snapshot of this launch be written before the next one
+        SystemClock.sleep(500);
+        return drawnAt[0] - start;
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
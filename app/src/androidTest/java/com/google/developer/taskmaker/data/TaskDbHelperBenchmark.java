@@ -0,0 +1,123 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures list query latency while a bulk write transaction is running,
+ * with the rollback journal and with write-ahead logging.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskDbHelperBenchmark {
+    private static final String TAG = TaskDbHelperBenchmark.class.getSimpleName();
+
+    private static final int WRITE_ROWS = 20000;
+    private static final int MAX_READS = 200;
+
+    /* Read latencies sampled while the writer held its transaction */
+    private static class Result {
+        long[] latencies;
+        int readsDuringWrite;
+
+        long percentile(int p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, sorted.length * p / 100)];
+        }
+    }
+
+    @Test
+    public void readLatencyDuringBulkWrite() throws Exception {
+        Result rollback = measure("bench_rollback.db", false);
+        Result wal = measure("bench_wal.db", true);
+
+        Log.i(TAG, String.format("rollback journal: %d reads during write, p50 %dus, p95 %dus",
+                rollback.readsDuringWrite, rollback.percentile(50), rollback.percentile(95)));
+        Log.i(TAG, String.format("write-ahead log:  %d reads during write, p50 %dus, p95 %dus",
+                wal.readsDuringWrite, wal.percentile(50), wal.percentile(95)));
+
+        //With WAL, readers no longer wait for the write transaction to commit
+        assertTrue(wal.readsDuringWrite > 0);
+    }
+
+    private Result measure(String name, boolean writeAheadLogging) throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(name);
+        TaskDbHelper helper = new TaskDbHelper(context, name, writeAheadLogging);
+
+        try {
+            final SQLiteDatabase db = helper.getWritableDatabase();
+            final CountDownLatch writeStarted = new CountDownLatch(1);
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ContentValues values = new ContentValues();
+                    db.beginTransaction();
+                    try {
+                        writeStarted.countDown();
+                        for (int i = 0; i < WRITE_ROWS; i++) {
+                            values.put(TaskColumns.DESCRIPTION, "Task " + i);
+                            values.put(TaskColumns.IS_COMPLETE, i % 2);
+                            values.put(TaskColumns.IS_PRIORITY, i % 3 == 0 ? 1 : 0);
+                            values.put(TaskColumns.DUE_DATE, 1000L * i);
+                            db.insert(DatabaseContract.TABLE_TASKS, null, values);
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            }, TAG + "-writer");
+
+            writer.start();
+            writeStarted.await();
+
+            long[] latencies = new long[MAX_READS];
+            int reads = 0;
+            int readsDuringWrite = 0;
+            while (reads < MAX_READS && writer.isAlive()) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                Cursor cursor = db.query(DatabaseContract.TABLE_TASKS, null, null, null,
+                        null, null, DatabaseContract.DEFAULT_SORT,
+                        String.valueOf(DatabaseContract.PAGE_SIZE));
+                cursor.getCount();
+                cursor.close();
+                long end = SystemClock.elapsedRealtimeNanos();
+
+                latencies[reads++] = (end - start) / 1000;
+                if (writer.isAlive()) {
+                    readsDuringWrite++;
+                }
+            }
+            writer.join();
+
+            Result result = new Result();
+            result.latencies = Arrays.copyOf(latencies, reads);
+            result.readsDuringWrite = readsDuringWrite;
+            return result;
+        } finally {
+            helper.close();
+            context.deleteDatabase(name);
+        }
+    }
+}
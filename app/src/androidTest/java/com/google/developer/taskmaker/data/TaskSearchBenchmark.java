@@ -0,0 +1,117 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the full-text search of the provider with a LIKE scan over 100k tasks.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskSearchBenchmark {
+    private static final String TAG = TaskSearchBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "bench_search.db";
+    private static final int ROWS = 100000;
+    private static final int RUNS = 20;
+
+    private static final String[] WORDS = {
+            "call", "buy", "email", "review", "plan", "book", "pay", "clean", "write", "fix",
+            "dentist", "groceries", "report", "invoice", "garage", "flight", "budget", "car"
+    };
+    //Appears in one task out of every 1000
+    private static final String RARE_WORD = "passport";
+
+    private static final String SQL_LIKE = String.format(
+            "SELECT %1$s, %2$s, %3$s, %4$s, %5$s FROM %6$s WHERE %2$s LIKE ? LIMIT -1",
+            TaskColumns._ID,
+            TaskColumns.DESCRIPTION,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE,
+            DatabaseContract.TABLE_TASKS);
+
+    @Test
+    public void searchAgainstLikeScan() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        TaskDbHelper helper = new TaskDbHelper(context, DATABASE_NAME, true);
+
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            insertTasks(db);
+
+            String[] searchArgs = {TaskProvider.buildMatchQuery(RARE_WORD), "-1"};
+            String[] likeArgs = {"%" + RARE_WORD + "%"};
+
+            //Both find the same tasks
+            assertEquals(ROWS / 1000, count(db, TaskProvider.SQL_SEARCH, searchArgs));
+            assertEquals(ROWS / 1000, count(db, SQL_LIKE, likeArgs));
+
+            long search = median(db, TaskProvider.SQL_SEARCH, searchArgs);
+            long like = median(db, SQL_LIKE, likeArgs);
+            Log.i(TAG, String.format("%d rows: search %dus, LIKE scan %dus", ROWS, search, like));
+
+            assertTrue("Search " + search + "us, LIKE " + like + "us", search < like);
+        } finally {
+            helper.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private static void insertTasks(SQLiteDatabase db) {
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                String description = WORDS[i % WORDS.length] + " "
+                        + WORDS[(i / WORDS.length) % WORDS.length] + " "
+                        + (i % 1000 == 0 ? RARE_WORD : "item") + " " + i;
+                values.put(TaskColumns.DESCRIPTION, description);
+                values.put(TaskColumns.IS_COMPLETE, i % 2);
+                values.put(TaskColumns.IS_PRIORITY, i % 3 == 0 ? 1 : 0);
+                values.put(TaskColumns.DUE_DATE, 1000L * i);
+                db.insert(DatabaseContract.TABLE_TASKS, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static int count(SQLiteDatabase db, String sql, String[] args) {
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Median time to run the query and fill its cursor, in microseconds */
+    private static long median(SQLiteDatabase db, String sql, String[] args) {
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            count(db, sql, args);
+            times[i] = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
@@ -0,0 +1,91 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares 10k sequential completion toggles through SQLiteDatabase.update and
+ * through the compiled statement used by the provider. Each toggle commits on
+ * its own, so the timings are dominated by fsync and only logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskStatementsBenchmark {
+    private static final String TAG = TaskStatementsBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "bench_statements.db";
+    private static final int TASKS = 100;
+    private static final int TOGGLES = 10000;
+
+    @Test
+    public void sequentialToggles() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        TaskDbHelper helper = new TaskDbHelper(context, DATABASE_NAME, true);
+
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < TASKS; i++) {
+                values.put(TaskColumns.DESCRIPTION, "Task " + i);
+                values.put(TaskColumns.IS_COMPLETE, 0);
+                values.put(TaskColumns.IS_PRIORITY, 0);
+                db.insert(DatabaseContract.TABLE_TASKS, null, values);
+            }
+
+            //Warm up both paths
+            toggleWithUpdate(db, TASKS);
+            toggleWithStatement(new TaskStatements(helper), TASKS);
+
+            long update = toggleWithUpdate(db, TOGGLES);
+            long statement = toggleWithStatement(new TaskStatements(helper), TOGGLES);
+
+            Log.i(TAG, String.format("%d toggles: update() %d/s, compiled statement %d/s",
+                    TOGGLES, perSecond(update), perSecond(statement)));
+
+            //The last toggle of every even id set it, of every odd id cleared it
+            assertEquals(TASKS / 2, DatabaseUtils.queryNumEntries(db,
+                    DatabaseContract.TABLE_TASKS, TaskColumns.IS_COMPLETE + " = 1"));
+        } finally {
+            helper.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    /* Same work the provider did per toggle before, in milliseconds */
+    private static long toggleWithUpdate(SQLiteDatabase db, int toggles) {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < toggles; i++) {
+            ContentValues values = new ContentValues();
+            values.put(TaskColumns.IS_COMPLETE, i % 2);
+            db.update(DatabaseContract.TABLE_TASKS, values,
+                    String.format("%s = ?", TaskColumns._ID),
+                    new String[]{String.valueOf(1 + i % TASKS)});
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private static long toggleWithStatement(TaskStatements statements, int toggles) {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < toggles; i++) {
+            statements.updateComplete(1 + i % TASKS, i % 2 == 1);
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private static long perSecond(long millis) {
+        return TOGGLES * 1000L / Math.max(1, millis);
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs single toggles through the compiled statements while another thread
+ * toggles the same tasks inside a batch transaction, as the provider does for
+ * applyBatch. Both must complete instead of waiting on each other.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskStatementsTest {
+
+    private static final String DATABASE_NAME = "test_statements.db";
+    //Ids clear of the demo task the helper creates
+    private static final long FIRST_ID = 1000;
+    private static final int TASKS = 20;
+    private static final int TOGGLES = 2000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private TaskDbHelper mHelper;
+    private ExecutorService mThreads;
+
+    @Before
+    public void setUp() {
+        mContext.deleteDatabase(DATABASE_NAME);
+        mHelper = new TaskDbHelper(mContext, DATABASE_NAME, true);
+        mThreads = Executors.newFixedThreadPool(2);
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < TASKS; i++) {
+            values.put(TaskColumns._ID, FIRST_ID + i);
+            values.put(TaskColumns.DESCRIPTION, "Task " + i);
+            values.put(TaskColumns.IS_COMPLETE, 0);
+            values.put(TaskColumns.IS_PRIORITY, 0);
+            db.insert(DatabaseContract.TABLE_TASKS, null, values);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mThreads.shutdownNow();
+        mHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void batchAndSingleToggles_bothComplete() throws Exception {
+        final TaskStatements statements = new TaskStatements(mHelper);
+
+        Future<Integer> batch = mThreads.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                SQLiteDatabase db = mHelper.getWritableDatabase();
+                int count = 0;
+                for (int i = 0; i < TOGGLES / TASKS; i++) {
+                    db.beginTransaction();
+                    try {
+                        for (int id = 0; id < TASKS; id++) {
+                            count += statements.updateComplete(FIRST_ID + id, true);
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+                return count;
+            }
+        });
+
+        Future<Integer> singles = mThreads.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                int count = 0;
+                for (int i = 0; i < TOGGLES; i++) {
+                    count += statements.updateComplete(FIRST_ID + i % TASKS, false);
+                }
+                return count;
+            }
+        });
+
+        try {
+            assertEquals(TOGGLES, (int) batch.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(TOGGLES, (int) singles.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (TimeoutException e) {
+            fail("Batch and single toggles are waiting on each other");
+        }
+    }
+}
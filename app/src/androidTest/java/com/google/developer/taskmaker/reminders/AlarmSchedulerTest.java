@@ -0,0 +1,154 @@
+package com.google.developer.taskmaker.reminders;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.developer.taskmaker.R;
+import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Checks which system alarms AlarmScheduler arms for the reminder queue,
+ * through an AlarmManager injected with {@link AlarmManagerProvider}. Every
+ * test starts from an empty reminder queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AlarmSchedulerTest {
+
+    //Ids well above anything created by hand, removed again after each test
+    private static final long FIRST_ID = 20000000L;
+    private static final long MINUTE = 60 * 1000L;
+
+    private static AlarmManager sAlarmManager;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private long mNow;
+    private long mWindow;
+
+    @BeforeClass
+    public static void injectAlarmManager() {
+        AlarmManager alarmManager = mock(AlarmManager.class);
+        try {
+            AlarmManagerProvider.injectAlarmManager(alarmManager);
+            sAlarmManager = alarmManager;
+        } catch (IllegalStateException e) {
+            //An earlier test in this process already armed alarms with the real one
+        }
+    }
+
+    @Before
+    public void setUp() {
+        assumeTrue("AlarmManager was set before this test could inject one",
+                sAlarmManager != null);
+        reset(sAlarmManager);
+
+        mContext.getContentResolver().delete(DatabaseContract.REMINDERS_URI, null, null);
+        mNow = System.currentTimeMillis();
+        mWindow = mContext.getResources().getInteger(R.integer.reminder_window_ms);
+    }
+
+    @After
+    public void tearDown() {
+        //Reminders go with their tasks
+        mContext.getContentResolver().delete(DatabaseContract.CONTENT_URI,
+                TaskColumns._ID + " >= ?", new String[]{String.valueOf(FIRST_ID)});
+    }
+
+    @Test
+    public void priorityReminder_armsExactAlarm() {
+        long fireTime = mNow + 60 * MINUTE;
+        AlarmScheduler.scheduleAlarm(mContext, fireTime, insertTask(0, true));
+
+        verify(sAlarmManager).setExact(eq(AlarmManager.RTC), eq(fireTime), any(PendingIntent.class));
+        assertArmed(1, 0);
+    }
+
+    @Test
+    public void regularReminder_armsWindowedAlarm() {
+        long fireTime = mNow + 60 * MINUTE;
+        AlarmScheduler.scheduleAlarm(mContext, fireTime, insertTask(0, false));
+
+        verify(sAlarmManager).setWindow(eq(AlarmManager.RTC), eq(fireTime), eq(mWindow),
+                any(PendingIntent.class));
+        assertArmed(0, 1);
+    }
+
+    @Test
+    public void distantReminders_armBothAlarms() {
+        AlarmScheduler.scheduleAlarm(mContext, mNow + 60 * MINUTE, insertTask(0, true));
+        AlarmScheduler.scheduleAlarm(mContext, mNow + 10 * MINUTE, insertTask(1, false));
+        reset(sAlarmManager);
+
+        AlarmScheduler.armNextAlarm(mContext);
+
+        verify(sAlarmManager).setExact(eq(AlarmManager.RTC), eq(mNow + 60 * MINUTE),
+                any(PendingIntent.class));
+        verify(sAlarmManager).setWindow(eq(AlarmManager.RTC), eq(mNow + 10 * MINUTE),
+                eq(mWindow), any(PendingIntent.class));
+        assertArmed(1, 1);
+    }
+
+    @Test
+    public void regularReminderNearPriority_sharesExactAlarm() {
+        AlarmScheduler.scheduleAlarm(mContext, mNow + 60 * MINUTE, insertTask(0, true));
+        AlarmScheduler.scheduleAlarm(mContext, mNow + 55 * MINUTE, insertTask(1, false));
+        reset(sAlarmManager);
+
+        AlarmScheduler.armNextAlarm(mContext);
+
+        assertArmed(1, 0);
+    }
+
+    @Test
+    public void cancelledReminder_armsNoAlarm() {
+        Uri task = insertTask(0, true);
+        AlarmScheduler.scheduleAlarm(mContext, mNow + 60 * MINUTE, task);
+        reset(sAlarmManager);
+
+        AlarmScheduler.cancelAlarm(mContext, task);
+
+        assertArmed(0, 0);
+        verify(sAlarmManager, times(2)).cancel(any(PendingIntent.class));
+    }
+
+    /* Check the number of alarms armed in each mode since the last reset */
+    private static void assertArmed(int exact, int windowed) {
+        verify(sAlarmManager, times(exact))
+                .setExact(anyInt(), anyLong(), any(PendingIntent.class));
+        verify(sAlarmManager, times(windowed))
+                .setWindow(anyInt(), anyLong(), anyLong(), any(PendingIntent.class));
+        verify(sAlarmManager, never())
+                .set(anyInt(), anyLong(), any(PendingIntent.class));
+    }
+
+    private Uri insertTask(int offset, boolean isPriority) {
+        ContentValues values = new ContentValues();
+        values.put(TaskColumns._ID, FIRST_ID + offset);
+        values.put(TaskColumns.DESCRIPTION, "Alarm test task " + offset);
+        values.put(TaskColumns.IS_COMPLETE, 0);
+        values.put(TaskColumns.IS_PRIORITY, isPriority ? 1 : 0);
+        return mContext.getContentResolver().insert(DatabaseContract.CONTENT_URI, values);
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.developer.taskmaker.reminders;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.DatabaseContract.ReminderColumns;
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures a full reminder rebuild after a time zone change with 50k tasks.
+ * Half of them have a reminder still in the future, a quarter one that the
+ * change moves from the past into the future.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReminderRebuildBenchmark {
+    private static final String TAG = ReminderRebuildBenchmark.class.getSimpleName();
+
+    private static final int TASKS = 50000;
+
+    //Ids well above anything created by hand, removed again after the run
+    private static final long FIRST_ID = 10000000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        //Reminders go with their tasks
+        mContext.getContentResolver().delete(DatabaseContract.CONTENT_URI,
+                TaskColumns._ID + " >= ?", new String[]{String.valueOf(FIRST_ID)});
+        AlarmScheduler.armNextAlarm(mContext);
+    }
+
+    @Test
+    public void rebuildWithFiftyThousandTasks_movesUpcomingReminders() throws Exception {
+        ContentResolver resolver = mContext.getContentResolver();
+        long now = System.currentTimeMillis();
+        //Local times recorded in a zone two hours away from the current one
+        TimeZone zone = TimeZone.getDefault();
+        TimeZone previousZone = TimeZone.getTimeZone("GMT");
+        previousZone.setRawOffset(zone.getRawOffset() + 2 * (int) HOUR);
+
+        ContentValues[] tasks = new ContentValues[TASKS];
+        ArrayList<ContentProviderOperation> reminders = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            long id = FIRST_ID + i;
+            tasks[i] = new ContentValues();
+            tasks[i].put(TaskColumns._ID, id);
+            tasks[i].put(TaskColumns.DESCRIPTION, "Task " + i);
+            tasks[i].put(TaskColumns.IS_COMPLETE, 0);
+            tasks[i].put(TaskColumns.IS_PRIORITY, i % 3 == 0 ? 1 : 0);
+            tasks[i].put(TaskColumns.DUE_DATE, now + i * HOUR);
+
+            //Every other reminder is already in the past, half of those only just
+            long fireTime;
+            if (i % 2 == 0) {
+                fireTime = now + (i + 1) * HOUR;
+            } else if (i % 4 == 1) {
+                fireTime = now - HOUR / 2;
+            } else {
+                fireTime = now - (i + 1) * HOUR;
+            }
+            reminders.add(ContentProviderOperation.newInsert(DatabaseContract.REMINDERS_URI)
+                    .withValue(ReminderColumns.TASK_ID, id)
+                    .withValue(ReminderColumns.FIRE_TIME, fireTime)
+                    .withValue(ReminderColumns.LOCAL_TIME,
+                            ReminderQueue.toLocalTime(fireTime, previousZone))
+                    .build());
+        }
+        assertEquals(TASKS, resolver.bulkInsert(DatabaseContract.CONTENT_URI, tasks));
+        resolver.applyBatch(DatabaseContract.CONTENT_AUTHORITY, reminders);
+
+        long start = SystemClock.elapsedRealtime();
+        int moved = ReminderQueue.retime(mContext, System.currentTimeMillis(), zone);
+        AlarmScheduler.armNextAlarm(mContext);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        Log.i(TAG, String.format("Rebuilt %d reminders of %d tasks in %dms",
+                moved, TASKS, elapsed));
+
+        //Every reminder was read, all but those staying in the past moved
+        assertEquals(TASKS / 2 + TASKS / 4, moved);
+    }
+}
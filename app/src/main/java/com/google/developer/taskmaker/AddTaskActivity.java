@@ -7,7 +7,6 @@ import android.support.design.widget.TextInputEditText;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.SwitchCompat;
 import android.text.format.DateFormat;
-import android.text.format.DateUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -15,8 +14,10 @@ import android.widget.DatePicker;
 import android.widget.TextView;
 
 import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+import com.google.developer.taskmaker.data.Task;
 import com.google.developer.taskmaker.data.TaskUpdateService;
 import com.google.developer.taskmaker.views.DatePickerFragment;
+import com.google.developer.taskmaker.views.DueDateFormatter;
 
 import java.util.Calendar;
 
@@ -25,7 +26,7 @@ public class AddTaskActivity extends AppCompatActivity implements
         View.OnClickListener {
 
     //Selected due date, stored as a timestamp
-    private long mDueDate = Long.MAX_VALUE;
+    private long mDueDate = Task.NO_DATE;
 
     private TextInputEditText mDescriptionView;
     private SwitchCompat mPrioritySelect;
@@ -97,10 +98,10 @@ public class AddTaskActivity extends AppCompatActivity implements
     }
 
     private void updateDateDisplay() {
-        if (getDateSelection() == Long.MAX_VALUE) {
+        if (getDateSelection() == Task.NO_DATE) {
             mDueDateView.setText(R.string.date_empty);
         } else {
-            CharSequence formatted = DateUtils.getRelativeTimeSpanString(this, mDueDate);
+            CharSequence formatted = DueDateFormatter.getInstance(this).format(mDueDate);
             mDueDateView.setText(formatted);
         }
     }
@@ -111,7 +112,11 @@ public class AddTaskActivity extends AppCompatActivity implements
         values.put(TaskColumns.DESCRIPTION, mDescriptionView.getText().toString());
         values.put(TaskColumns.IS_PRIORITY, mPrioritySelect.isChecked() ? 1 : 0);
         values.put(TaskColumns.IS_COMPLETE, 0);
-        values.put(TaskColumns.DUE_DATE, getDateSelection());
+        if (getDateSelection() == Task.NO_DATE) {
+            values.putNull(TaskColumns.DUE_DATE);
+        } else {
+            values.put(TaskColumns.DUE_DATE, getDateSelection());
+        }
 
         TaskUpdateService.insertNewTask(this, values);
         finish();
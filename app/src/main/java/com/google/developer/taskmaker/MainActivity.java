@@ -2,9 +2,12 @@ package com.google.developer.taskmaker;
 
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
@@ -13,19 +16,28 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.PreferenceManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 
+import com.google.developer.taskmaker.data.DataExecutor;
 import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.Task;
 import com.google.developer.taskmaker.data.TaskAdapter;
+import com.google.developer.taskmaker.data.TaskListLoader;
+import com.google.developer.taskmaker.data.TaskSnapshot;
+import com.google.developer.taskmaker.data.TaskSnapshotStore;
 import com.google.developer.taskmaker.data.TaskUpdateService;
 
 // Make the Activity implement the LoaderCallbacks interface
 public class MainActivity extends AppCompatActivity implements
         TaskAdapter.OnItemClickListener,
+        TaskAdapter.OnPageLoadedListener,
         View.OnClickListener,
+        SearchView.OnQueryTextListener,
+        SharedPreferences.OnSharedPreferenceChangeListener,
         LoaderManager.LoaderCallbacks<Cursor> {
 
     // Create TAG for logging
@@ -35,6 +47,21 @@ public class MainActivity extends AppCompatActivity implements
 
     // Create ID for the specific Loader in this Activity
     private static final int ID_TASK_LOADER = 0;
+    private static final int ID_STATS_LOADER = 1;
+
+    // Wait for a pause in typing before searching
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
+    // Current search, or null while the full list is shown
+    private String mSearchQuery;
+    private String mPendingSearchQuery;
+    private final Handler mHandler = new Handler();
+    private final Runnable mSearch = new Runnable() {
+        @Override
+        public void run() {
+            applySearch(mPendingSearchQuery);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -45,31 +72,87 @@ public class MainActivity extends AppCompatActivity implements
 
         mAdapter = new TaskAdapter(null);
         mAdapter.setOnItemClickListener(this);
+        mAdapter.setOnPageLoadedListener(this);
 
         RecyclerView recyclerView = (RecyclerView) findViewById(R.id.recycler_view);
         recyclerView.setHasFixedSize(true);
         recyclerView.setAdapter(mAdapter);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
 
-        // Initialize the Loader
+        // Show the first screen saved by the last run while the tasks load. After a
+        // configuration change the retained Loader delivers its rows right away
+        if (savedInstanceState == null) {
+            TaskSnapshot warmStart = TaskSnapshotStore.read(this, getOrder());
+            if (warmStart != null) {
+                mAdapter.showSnapshot(warmStart);
+            }
+        }
+
+        // Initialize the Loaders
         getSupportLoaderManager().initLoader(ID_TASK_LOADER, null, this);
+        getSupportLoaderManager().initLoader(ID_STATS_LOADER, null, this);
+
+        // The Loaders reload when the tasks change, only a new order needs a restart
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(this);
     }
 
-    // Override the onResume() lifecycle method
     @Override
-    protected void onResume() {
-        super.onResume();
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearch);
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .unregisterOnSharedPreferenceChangeListener(this);
+    }
 
-        // Restart the Loader
-        getSupportLoaderManager().restartLoader(ID_TASK_LOADER, null, this);
+    /* Changes made in the SettingsActivity */
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (getString(R.string.pref_sortBy_key).equals(key)) {
+
+            // Restart the Loader to query in the new order
+            getSupportLoaderManager().restartLoader(ID_TASK_LOADER, null, this);
+        }
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
+
+        // Search as the user types, clearing the query when the view collapses
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(this);
+        return true;
+    }
+
+    /* Text typed in the search action */
+    @Override
+    public boolean onQueryTextChange(String newText) {
+        mPendingSearchQuery = newText;
+        mHandler.removeCallbacks(mSearch);
+        mHandler.postDelayed(mSearch, SEARCH_DEBOUNCE_MS);
         return true;
     }
 
+    @Override
+    public boolean onQueryTextSubmit(String query) {
+        mHandler.removeCallbacks(mSearch);
+        applySearch(query);
+        return true;
+    }
+
+    private void applySearch(String query) {
+        String trimmed = (query != null) ? query.trim() : "";
+        String searchQuery = trimmed.isEmpty() ? null : trimmed;
+        if (searchQuery == null ? mSearchQuery == null : searchQuery.equals(mSearchQuery)) {
+            return;
+        }
+
+        // Restarting cancels the load of the previous query
+        mSearchQuery = searchQuery;
+        getSupportLoaderManager().restartLoader(ID_TASK_LOADER, null, this);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -99,6 +182,13 @@ public class MainActivity extends AppCompatActivity implements
         // Set the data (URI and item Id) in the Intent
         detailIntent.setData(ContentUris.withAppendedId(DatabaseContract.CONTENT_URI, mAdapter.getItemId(position)));
 
+        // Pass the row as shown, so the detail screen renders before its query
+        Task task = mAdapter.getItem(position);
+        detailIntent.putExtra(TaskDetailActivity.EXTRA_DESCRIPTION, task.description);
+        detailIntent.putExtra(TaskDetailActivity.EXTRA_IS_COMPLETE, task.isComplete);
+        detailIntent.putExtra(TaskDetailActivity.EXTRA_IS_PRIORITY, task.isPriority);
+        detailIntent.putExtra(TaskDetailActivity.EXTRA_DUE_DATE, task.dueDateMillis);
+
         // Start the Activity, passing the Intent
         startActivity(detailIntent);
     }
@@ -114,13 +204,13 @@ public class MainActivity extends AppCompatActivity implements
         if (active) {
 
             // Store the Task as inactive in the IS_COMPLETE column
-            cv.put(DatabaseContract.TaskColumns.IS_COMPLETE, "1");
+            cv.put(DatabaseContract.TaskColumns.IS_COMPLETE, 1);
 
             // If the Task is not checked...
         } else {
 
             // Store the Task as active in the IS_COMPLETE column
-            cv.put(DatabaseContract.TaskColumns.IS_COMPLETE, "0");
+            cv.put(DatabaseContract.TaskColumns.IS_COMPLETE, 0);
         }
 
         // Update the Task, passing the context, the ContentURI, the Task's Id,
@@ -130,18 +220,46 @@ public class MainActivity extends AppCompatActivity implements
                 cv);
     }
 
+    /* Pages loaded by the adapter while scrolling */
+    @Override
+    public void onPageLoaded(int loadedCount) {
+        // Keep every loaded row in the next reload, so refreshes don't collapse the list
+        Loader<Cursor> loader = getSupportLoaderManager().getLoader(ID_TASK_LOADER);
+        if (loader instanceof CursorLoader) {
+            ((CursorLoader) loader).setUri(DatabaseContract.buildPageUri(loadedCount));
+        }
+    }
+
     @NonNull
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        // Counts shown in the toolbar, reloaded whenever the tasks change
+        if (id == ID_STATS_LOADER) {
+            return new CursorLoader(this, DatabaseContract.STATS_URI, null, null, null, null);
+        }
+
+        // Search results come ranked by the provider, in a single page
+        if (mSearchQuery != null) {
+            mAdapter.disablePaging();
+            return new TaskListLoader(this,
+                    DatabaseContract.buildSearchUri(mSearchQuery),
+                    DatabaseContract.LIST_PROJECTION,
+                    null);
+        }
+
+        String order = getOrder();
+
+        // Let the adapter fetch further pages in the same order
+        mAdapter.enablePaging(this, order);
 
-        // Return a new CursorLoader object, passing the ContentURI,
-        // and the sort order
-        return new CursorLoader(this,
-                DatabaseContract.CONTENT_URI,
-                null,
-                null,
-                null,
-                getOrder());
+        // Return a new TaskListLoader object, passing the ContentURI
+        // limited to the rows already on screen, and the sort order.
+        // It copies the rows for the adapter off the main thread
+        return new TaskListLoader(this,
+                DatabaseContract.buildPageUri(
+                        Math.max(DatabaseContract.PAGE_SIZE, mAdapter.getItemCount())),
+                DatabaseContract.LIST_PROJECTION,
+                order);
     }
 
     private final String getOrder() {
@@ -172,13 +290,49 @@ public class MainActivity extends AppCompatActivity implements
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (loader.getId() == ID_STATS_LOADER) {
+            showStats(data);
+            return;
+        }
 
         // Swap the old cursor in the adapter with a new cursor
-        mAdapter.swapCursor(data);
+        TaskSnapshot rows = mAdapter.swapCursor(data);
+
+        // Save the first screen for the next launch, unless these are search results
+        if (mSearchQuery == null && data != null) {
+            saveFirstScreen(getOrder(), rows);
+        }
+    }
+
+    private void saveFirstScreen(final String order, final TaskSnapshot rows) {
+        final Context appContext = getApplicationContext();
+
+        // Written in order on the write lane, the newest rows are saved last
+        DataExecutor.getInstance().write(TaskSnapshotStore.WRITE_KEY, new Runnable() {
+            @Override
+            public void run() {
+                TaskSnapshotStore.write(appContext, order, rows);
+            }
+        });
+    }
+
+    private void showStats(Cursor stats) {
+        if (stats == null || !stats.moveToFirst() || getSupportActionBar() == null) {
+            return;
+        }
+
+        getSupportActionBar().setSubtitle(getString(R.string.stats_subtitle,
+                DatabaseContract.getColumnInt(stats, DatabaseContract.StatsColumns.ACTIVE),
+                DatabaseContract.getColumnInt(stats, DatabaseContract.StatsColumns.OVERDUE),
+                DatabaseContract.getColumnInt(stats, DatabaseContract.StatsColumns.PRIORITY),
+                DatabaseContract.getColumnInt(stats, DatabaseContract.StatsColumns.COMPLETE)));
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == ID_STATS_LOADER) {
+            return;
+        }
 
         // Swap the old cursor in the adapter with a null cursor
         mAdapter.swapCursor(null);
@@ -0,0 +1,142 @@
+package com.google.developer.taskmaker;
+
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.google.developer.taskmaker.data.DataExecutor;
+import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.DatabaseContract.MetricsColumns;
+
+import java.util.Locale;
+
+/*
+ * Debug screen listing the provider metrics, one line per operation and route,
+ * below the state of the DataExecutor lanes. Reached from the SettingsActivity.
+ */
+public class MetricsActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<Cursor> {
+
+    // Create ID for the specific Loader in this Activity
+    private static final int ID_METRICS_LOADER = 0;
+
+    private static final String ROW_FORMAT = "%-10s %-14s %7s %9s %8s %8s %8s %8s %6s %6s%n";
+
+    private TextView mMetricsView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsView = (TextView) findViewById(R.id.text_metrics);
+
+        // Initialize the Loader
+        getSupportLoaderManager().initLoader(ID_METRICS_LOADER, null, this);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+
+        // Without an argument the provider only reports whether it is recording
+        menu.findItem(R.id.action_record).setChecked(callProvider(
+                DatabaseContract.METHOD_SET_METRICS_ENABLED, null));
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_refresh:
+                reload();
+                return true;
+
+            case R.id.action_record:
+                item.setChecked(callProvider(DatabaseContract.METHOD_SET_METRICS_ENABLED,
+                        String.valueOf(!item.isChecked())));
+                return true;
+
+            case R.id.action_reset:
+                callProvider(DatabaseContract.METHOD_RESET_METRICS, null);
+                reload();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /* Call a metrics method, returning whether metrics are being recorded */
+    private boolean callProvider(String method, String arg) {
+        Bundle state = getContentResolver().call(DatabaseContract.CONTENT_URI, method, arg, null);
+        return state != null && state.getBoolean(DatabaseContract.KEY_METRICS_ENABLED);
+    }
+
+    private void reload() {
+        // Metrics change with every operation, so the provider leaves their cursor
+        // without a notification Uri and they are reloaded on request
+        getSupportLoaderManager().restartLoader(ID_METRICS_LOADER, null, this);
+    }
+
+    @NonNull
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new CursorLoader(this, DatabaseContract.METRICS_URI, null, null, null, null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        StringBuilder text = new StringBuilder();
+        appendExecutorState(text, R.string.metrics_read_lane, DataExecutor.LANE_READ);
+        appendExecutorState(text, R.string.metrics_write_lane, DataExecutor.LANE_WRITE);
+        text.append('\n');
+
+        if (data == null || !data.moveToFirst()) {
+            text.append(getString(R.string.metrics_empty));
+            mMetricsView.setText(text);
+            return;
+        }
+
+        text.append(String.format(Locale.US, ROW_FORMAT, "operation", "route", "count", "rows",
+                "p50 us", "p90 us", "p99 us", "max us", "window", "notify"));
+        do {
+            text.append(String.format(Locale.US, ROW_FORMAT,
+                    getString(data, MetricsColumns.OPERATION),
+                    getString(data, MetricsColumns.ROUTE),
+                    getString(data, MetricsColumns.COUNT),
+                    getString(data, MetricsColumns.ROWS),
+                    getString(data, MetricsColumns.P50_MICROS),
+                    getString(data, MetricsColumns.P90_MICROS),
+                    getString(data, MetricsColumns.P99_MICROS),
+                    getString(data, MetricsColumns.MAX_MICROS),
+                    getString(data, MetricsColumns.WINDOW_ROWS),
+                    getString(data, MetricsColumns.NOTIFICATIONS)));
+        } while (data.moveToNext());
+
+        mMetricsView.setText(text);
+    }
+
+    /* Queued, running and completed work of a lane, as of this load */
+    private void appendExecutorState(StringBuilder text, int labelId, int lane) {
+        DataExecutor executor = DataExecutor.getInstance();
+        text.append(getString(R.string.metrics_executor_lane, getString(labelId),
+                executor.getQueueDepth(lane),
+                executor.getActiveCount(lane),
+                executor.getCompletedCount(lane)))
+                .append('\n');
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndexOrThrow(column));
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mMetricsView.setText(null);
+    }
+}
@@ -1,11 +1,15 @@
 package com.google.developer.taskmaker;
 
 import android.app.DatePickerDialog;
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
-import android.text.format.DateUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -14,16 +18,29 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.google.developer.taskmaker.data.DataExecutor;
 import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.Task;
 import com.google.developer.taskmaker.data.TaskUpdateService;
 import com.google.developer.taskmaker.reminders.AlarmScheduler;
 import com.google.developer.taskmaker.views.DatePickerFragment;
+import com.google.developer.taskmaker.views.DueDateFormatter;
 import com.google.developer.taskmaker.views.TaskTitleView;
 
 import java.util.Calendar;
 
 public class TaskDetailActivity extends AppCompatActivity implements
-        DatePickerDialog.OnDateSetListener {
+        DatePickerDialog.OnDateSetListener,
+        LoaderManager.LoaderCallbacks<Cursor> {
+
+    // Optional extras with the row the user tapped, shown before the Task is loaded
+    public static final String EXTRA_DESCRIPTION = "description";
+    public static final String EXTRA_IS_COMPLETE = "is_complete";
+    public static final String EXTRA_IS_PRIORITY = "is_priority";
+    public static final String EXTRA_DUE_DATE = "due_date";
+
+    // Create ID for the specific Loader in this Activity
+    private static final int ID_DETAIL_LOADER = 0;
 
     // Declare Custom TaskTitleView
     private TaskTitleView textDescription;
@@ -37,9 +54,6 @@ public class TaskDetailActivity extends AppCompatActivity implements
     // Declare field Uri
     Uri mUri;
 
-    // Declare a cursor field
-    private Cursor mDetailCursor;
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -51,14 +65,20 @@ public class TaskDetailActivity extends AppCompatActivity implements
         // Persist the Uri as a field of the class
         mUri = taskUri;
 
-        //TODO: Display attributes of the provided task in the UI
-
         // Initialize the view components of the Activity
         initView();
 
-        // Get the data from the database and display it in the UI
-        getData();
+        // Show the tapped row right away, without touching the database
+        Bundle extras = getIntent().getExtras();
+        if (extras != null && extras.containsKey(EXTRA_DESCRIPTION)) {
+            displayTask(new Task(extras.getString(EXTRA_DESCRIPTION),
+                    extras.getBoolean(EXTRA_IS_COMPLETE),
+                    extras.getBoolean(EXTRA_IS_PRIORITY),
+                    extras.getLong(EXTRA_DUE_DATE, Task.NO_DATE)));
+        }
 
+        // Load the Task in the background, and again whenever it changes
+        getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, this);
     }
 
     private void initView() {
@@ -73,48 +93,43 @@ public class TaskDetailActivity extends AppCompatActivity implements
         imagePriority = (ImageView) findViewById(R.id.priority);
     }
 
-    private void getData() {
+    @NonNull
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
 
-        // Query the database, passing the Uri of a specific Task
-        mDetailCursor = getContentResolver().query(
+        // Query the provider for the one Task, observing it for changes
+        return new CursorLoader(this,
                 mUri,
-                null,
+                DatabaseContract.LIST_PROJECTION,
                 null,
                 null,
                 null);
+    }
 
-        // Assert that the cursor is not null
-        assert mDetailCursor != null;
-
-        // Get the column index of the checkbox
-        int checkboxIndex = mDetailCursor.getColumnIndex(DatabaseContract.TaskColumns.IS_COMPLETE);
-
-        // Get the column index of the priority
-        int priorityIndex = mDetailCursor.getColumnIndex(DatabaseContract.TaskColumns.IS_PRIORITY);
-
-        // Get the column index of the dueDate
-        int dueDateIndex = mDetailCursor.getColumnIndex(DatabaseContract.TaskColumns.DUE_DATE);
-
-        // Get the column index of the taskDescription
-        int taskDescriptionIndex = mDetailCursor.getColumnIndex(DatabaseContract.TaskColumns.DESCRIPTION);
-
-        // Move to the beginning of the cursor
-        mDetailCursor.moveToFirst();
-
-        // Get the value of isComplete from the cursor
-        int isComplete = mDetailCursor.getInt(checkboxIndex);
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
 
-        // Get the value of priority from the cursor
-        int priority = mDetailCursor.getInt(priorityIndex);
+        // The loader owns the cursor and closes it, so only read from it here
+        if (data == null) {
+            return;
+        }
+        if (data.moveToFirst()) {
+            displayTask(new Task(data));
+        } else {
+            // The Task was deleted elsewhere, there is nothing left to show
+            finish();
+        }
+    }
 
-        // Get the value of dueDate from the cursor
-        long dueDate = Long.parseLong(mDetailCursor.getString(dueDateIndex));
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        // Nothing holds on to the cursor
+    }
 
-        // Get the value of taskDescription from the cursor
-        String taskDescription = mDetailCursor.getString(taskDescriptionIndex);
+    private void displayTask(Task task) {
 
         // If the Task is a priority...
-        if (priority == 1) {
+        if (task.isPriority) {
 
             // Set the imagePriority ImageView with the priority icon
             imagePriority.setImageResource(R.drawable.ic_priority);
@@ -126,7 +141,7 @@ public class TaskDetailActivity extends AppCompatActivity implements
         }
 
         // If there is no due date...
-        if (dueDate == Long.MAX_VALUE) {
+        if (!task.hasDueDate()) {
 
             // Display the "Not Set" text in the textDate TextView
             textDate.setText(R.string.date_empty);
@@ -134,7 +149,7 @@ public class TaskDetailActivity extends AppCompatActivity implements
         } else { // If there is a due date...
 
             // Format the dueDate
-            CharSequence formatted = DateUtils.getRelativeTimeSpanString(this, dueDate);
+            CharSequence formatted = DueDateFormatter.getInstance(this).format(task.dueDateMillis);
 
             // Make the textDate TextView visible
             textDate.setVisibility(View.VISIBLE);
@@ -144,7 +159,7 @@ public class TaskDetailActivity extends AppCompatActivity implements
         }
 
         // Set the description of the Task on the textDate TextView
-        textDescription.setText(taskDescription);
+        textDescription.setText(task.description);
     }
 
     @Override
@@ -228,10 +243,19 @@ public class TaskDetailActivity extends AppCompatActivity implements
         }
 
         // Display Alarm scheduled Toast
-        Toast.makeText(this, "Alarm scheduled to " + DateUtils.getRelativeTimeSpanString(this, c.getTimeInMillis()), Toast.LENGTH_SHORT).show();
-
-        // Schedule the alarm to the time selected by the user in milliseconds
-        AlarmScheduler.scheduleAlarm(getApplicationContext(), c.getTimeInMillis(), mUri);
+        Toast.makeText(this, "Alarm scheduled to " + DueDateFormatter.getInstance(this).format(c.getTimeInMillis()), Toast.LENGTH_SHORT).show();
+
+        // Schedule the alarm to the time selected by the user in milliseconds,
+        // off the main thread since the reminder queue lives in the database
+        final long alarmTime = c.getTimeInMillis();
+        final Context appContext = getApplicationContext();
+        final Uri taskUri = mUri;
+        DataExecutor.getInstance().write(AlarmScheduler.WRITE_KEY, new Runnable() {
+            @Override
+            public void run() {
+                AlarmScheduler.scheduleAlarm(appContext, alarmTime, taskUri);
+            }
+        });
     }
 
 }
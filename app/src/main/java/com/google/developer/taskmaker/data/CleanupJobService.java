@@ -2,16 +2,58 @@ package com.google.developer.taskmaker.data;
 
 import android.app.job.JobParameters;
 import android.app.job.JobService;
-import android.os.AsyncTask;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.PersistableBundle;
 import android.util.Log;
 
+/*
+ * Purges completed tasks in bounded batches, so the write lock is only held
+ * for one small delete at a time.
+ */
 public class CleanupJobService extends JobService {
     private static final String TAG = CleanupJobService.class.getSimpleName();
 
+    //Job extra overriding the number of rows deleted per batch
+    public static final String EXTRA_BATCH_SIZE = "batch_size";
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    /*
+     * High-water mark: every completion bumps the completed version, and a run
+     * that purges everything records the version it started from. If the two
+     * match, nothing has been completed since and the run exits immediately.
+     */
+    private static final String PREFS_NAME = "cleanup_state";
+    private static final String KEY_COMPLETED_VERSION = "completed_version";
+    private static final String KEY_PURGED_VERSION = "purged_version";
+
+    //Cleanup passes run one at a time, apart from the other writers
+    /*package*/ static final Object WRITE_KEY = CleanupJobService.class;
+
+    private CleanupTask mCleanup;
+
+    /**
+     * Record that a task was marked complete and may need to be purged.
+     */
+    public static synchronized void markCompleted(Context context) {
+        SharedPreferences prefs = getState(context);
+        long version = prefs.getLong(KEY_COMPLETED_VERSION, 0);
+        prefs.edit().putLong(KEY_COMPLETED_VERSION, version + 1).apply();
+    }
+
+    private static SharedPreferences getState(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
     @Override
     public boolean onStartJob(JobParameters params) {
-        Log.d(TAG, "Cleanup job started");
-        new CleanupTask().execute(params);
+        PersistableBundle extras = params.getExtras();
+        int batchSize = extras.getInt(EXTRA_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+
+        //The cleanup state is read by the task, off the main thread
+        mCleanup = new CleanupTask(params, batchSize);
+        DataExecutor.getInstance().write(WRITE_KEY, mCleanup);
 
         //Work is not yet complete
         return true;
@@ -19,28 +61,96 @@ public class CleanupJobService extends JobService {
 
     @Override
     public boolean onStopJob(JobParameters params) {
-        //No need to reschedule any jobs
-        return false;
+        //Stop after the current batch, and have the rest retried later
+        if (mCleanup != null) {
+            mCleanup.stop();
+            mCleanup = null;
+        }
+        return true;
     }
 
-    /* Handle access to the database on a background thread */
-    private class CleanupTask extends AsyncTask<JobParameters, Void, JobParameters> {
+    /*
+     * Handle access to the database on the write lane. Each run deletes one
+     * batch and submits the next one, which queues it behind the writes other
+     * components made in the meantime instead of holding a write thread.
+     */
+    private class CleanupTask implements Runnable {
+        private final JobParameters mParams;
+        private final int mBatchSize;
+        private volatile boolean mStopped;
 
-        @Override
-        protected JobParameters doInBackground(JobParameters... params) {
-            String where = String.format("%s = ?", DatabaseContract.TaskColumns.IS_COMPLETE);
-            String[] args = {"1"};
+        //Only touched by the runs, which follow one another under WRITE_KEY
+        private boolean mStarted;
+        private long mStartVersion;
+        private int mTotal;
 
-            int count = getContentResolver().delete(DatabaseContract.CONTENT_URI, where, args);
-            Log.d(TAG, "Cleaned up " + count + " completed tasks");
+        CleanupTask(JobParameters params, int batchSize) {
+            mParams = params;
+            mBatchSize = batchSize;
+        }
 
-            return params[0];
+        void stop() {
+            mStopped = true;
         }
 
         @Override
-        protected void onPostExecute(JobParameters jobParameters) {
+        public void run() {
+            if (!mStarted && !start()) {
+                return;
+            }
+
+            if (mStopped) {
+                //The job is already over and will be retried
+                finish();
+                Log.d(TAG, "Cleanup stopped after " + mTotal + " completed tasks");
+                return;
+            }
+
+            Bundle result = getContentResolver().call(DatabaseContract.CONTENT_URI,
+                    DatabaseContract.METHOD_PURGE_COMPLETED, String.valueOf(mBatchSize), null);
+            int count = result.getInt(DatabaseContract.KEY_PURGED_COUNT);
+            mTotal += count;
+            if (count == mBatchSize) {
+                DataExecutor.getInstance().write(WRITE_KEY, this);
+                return;
+            }
+
+            finish();
+            Log.d(TAG, "Cleaned up " + mTotal + " completed tasks");
+
+            //Everything completed up to the start of this run is gone
+            getState(CleanupJobService.this).edit()
+                    .putLong(KEY_PURGED_VERSION, mStartVersion)
+                    .apply();
+
             //Notify that the work is now done
-            jobFinished(jobParameters, false);
+            jobFinished(mParams, false);
+        }
+
+        /* Check the cleanup state, returning false if there is nothing to purge */
+        private boolean start() {
+            SharedPreferences prefs = getState(CleanupJobService.this);
+            long completed = prefs.getLong(KEY_COMPLETED_VERSION, 0);
+            //No mark yet (e.g. after an upgrade), so a full check is needed
+            long purged = prefs.getLong(KEY_PURGED_VERSION, -1);
+            if (completed == purged) {
+                Log.d(TAG, "Cleanup job skipped, nothing completed since last run");
+                jobFinished(mParams, false);
+                return false;
+            }
+
+            Log.d(TAG, "Cleanup job started");
+            mStarted = true;
+            mStartVersion = completed;
+            return true;
+        }
+
+        /* Observers are notified once, after the last batch */
+        private void finish() {
+            if (mTotal > 0) {
+                getContentResolver().call(DatabaseContract.CONTENT_URI,
+                        DatabaseContract.METHOD_PURGE_FINISHED, null, null);
+            }
         }
     }
 }
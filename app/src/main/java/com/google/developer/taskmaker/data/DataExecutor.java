@@ -0,0 +1,227 @@
+package com.google.developer.taskmaker.data;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background database work of the app on a fixed set of named threads,
+ * split into two lanes so that reads never wait behind writes.
+ *
+ * Writes are submitted with a key. Writes sharing a key run one at a time, in
+ * the order they were submitted, while writes with different keys may run side
+ * by side. A long write, such as a cleanup pass, therefore only delays later
+ * writes made under its own key. Every submission returns a {@link Future}
+ * that can be used to cancel it; a cancelled write that has not started is
+ * skipped without holding up the writes queued behind it.
+ */
+public class DataExecutor {
+
+    public static final int LANE_READ = 0;
+    public static final int LANE_WRITE = 1;
+
+    private static final int READ_THREADS = 2;
+    //SQLite has a single writer, so writes of different keys mostly take turns on
+    //its lock. The second thread lets one key start while another runs non-SQL work
+    //such as alarm scheduling; more threads would only wait on the lock
+    private static final int WRITE_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static DataExecutor sInstance;
+
+    private final ThreadPoolExecutor mReadPool;
+    private final ThreadPoolExecutor mWritePool;
+
+    //Writes waiting behind an earlier write with the same key, guarded by itself
+    private final Map<Object, ArrayDeque<FutureTask<?>>> mWriteQueues = new HashMap<>();
+
+    private final AtomicInteger mQueuedWrites = new AtomicInteger();
+    private final AtomicLong mCompletedReads = new AtomicLong();
+    private final AtomicLong mCompletedWrites = new AtomicLong();
+
+    /**
+     * Return the executor shared by the whole process.
+     */
+    public static synchronized DataExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new DataExecutor(READ_THREADS, WRITE_THREADS);
+        }
+        return sInstance;
+    }
+
+    /*package*/ DataExecutor(int readThreads, int writeThreads) {
+        mReadPool = createPool("TaskMaker-read", readThreads);
+        mWritePool = createPool("TaskMaker-write", writeThreads);
+    }
+
+    private static ThreadPoolExecutor createPool(final String name, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, name + "-" + mCount.incrementAndGet());
+                    }
+                });
+        //Idle processes, such as one woken for a single reminder, keep no threads
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Run work that only reads from the database.
+     */
+    public Future<?> read(Runnable work) {
+        FutureTask<Void> task = new FutureTask<Void>(counting(work, mCompletedReads), null) {
+            @Override
+            protected void done() {
+                reportFailure(this);
+            }
+        };
+        mReadPool.execute(task);
+        return task;
+    }
+
+    /**
+     * Run work that writes to the database, after every earlier write with the same key.
+     *
+     * @param key Orders the write, such as the Uri of the task written to, or a
+     *            constant shared by all writes of one component.
+     */
+    public Future<?> write(final Object key, Runnable work) {
+        if (key == null) {
+            throw new IllegalArgumentException("Writes need a key");
+        }
+
+        FutureTask<Void> task = new FutureTask<Void>(counting(work, mCompletedWrites), null) {
+            @Override
+            protected void done() {
+                reportFailure(this);
+            }
+        };
+
+        mQueuedWrites.incrementAndGet();
+        boolean idle;
+        synchronized (mWriteQueues) {
+            ArrayDeque<FutureTask<?>> queue = mWriteQueues.get(key);
+            idle = (queue == null);
+            if (idle) {
+                queue = new ArrayDeque<>();
+                mWriteQueues.put(key, queue);
+            }
+            queue.add(task);
+        }
+
+        //Only one drain per key is ever scheduled, which keeps its writes in order
+        if (idle) {
+            scheduleDrain(key);
+        }
+        return task;
+    }
+
+    private void scheduleDrain(final Object key) {
+        mWritePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                runNextWrite(key);
+            }
+        });
+    }
+
+    /* Run the oldest write of a key, then queue a drain for the next one */
+    private void runNextWrite(Object key) {
+        FutureTask<?> task;
+        synchronized (mWriteQueues) {
+            task = mWriteQueues.get(key).peek();
+        }
+
+        //Does nothing if the write was cancelled while queued
+        mQueuedWrites.decrementAndGet();
+        task.run();
+
+        boolean more;
+        synchronized (mWriteQueues) {
+            ArrayDeque<FutureTask<?>> queue = mWriteQueues.get(key);
+            queue.poll();
+            more = !queue.isEmpty();
+            if (!more) {
+                mWriteQueues.remove(key);
+            }
+        }
+
+        //Yield the thread between writes, so other keys get their turn
+        if (more) {
+            scheduleDrain(key);
+        }
+    }
+
+    /* Counted before the Future completes, so waiters on it see the new count */
+    private static Runnable counting(final Runnable work, final AtomicLong counter) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.run();
+                } finally {
+                    counter.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    /* Futures keep exceptions to themselves, crash on them as a plain thread would */
+    private static void reportFailure(FutureTask<?> task) {
+        if (task.isCancelled()) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e.getCause());
+        } catch (InterruptedException e) {
+            //Not reached, the task is done
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of submitted tasks of a lane that have not started yet. Cancelled
+     * writes count until the writes ahead of them have run.
+     *
+     * @param lane {@link #LANE_READ} or {@link #LANE_WRITE}
+     */
+    public int getQueueDepth(int lane) {
+        return (lane == LANE_READ) ? mReadPool.getQueue().size() : mQueuedWrites.get();
+    }
+
+    /**
+     * Number of tasks of a lane that are running right now.
+     */
+    public int getActiveCount(int lane) {
+        return getPool(lane).getActiveCount();
+    }
+
+    /**
+     * Number of tasks of a lane that have run, whether they succeeded or failed.
+     */
+    public long getCompletedCount(int lane) {
+        return (lane == LANE_READ) ? mCompletedReads.get() : mCompletedWrites.get();
+    }
+
+    private ThreadPoolExecutor getPool(int lane) {
+        return (lane == LANE_READ) ? mReadPool : mWritePool;
+    }
+}
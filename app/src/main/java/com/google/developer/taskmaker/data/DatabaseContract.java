@@ -7,6 +7,14 @@ import android.provider.BaseColumns;
 public class DatabaseContract {
     //Database schema information
     public static final String TABLE_TASKS = "tasks";
+    public static final String TABLE_REMINDERS = "reminders";
+    //Full-text index of task descriptions, kept in sync by triggers
+    public static final String TABLE_TASKS_FTS = "tasks_fts";
+    //Indexes backing the sort orders below
+    public static final String INDEX_DEFAULT_SORT = "tasks_default_sort_idx";
+    public static final String INDEX_DATE_SORT = "tasks_date_sort_idx";
+    //Index ordering pending reminders by fire time
+    public static final String INDEX_REMINDER_TIME = "reminders_fire_time_idx";
 
     public static final class TaskColumns implements BaseColumns {
         //Task description
@@ -15,21 +23,148 @@ public class DatabaseContract {
         public static final String IS_COMPLETE = "is_complete";
         //Priority marker
         public static final String IS_PRIORITY = "is_priority";
-        //Completion date (can be null)
+        //Completion date in milliseconds, NULL if there is none
         public static final String DUE_DATE = "due_date";
     }
 
+    public static final class ReminderColumns {
+        //Task the reminder belongs to, at most one reminder per task
+        public static final String TASK_ID = "task_id";
+        //Time the reminder should be delivered
+        public static final String FIRE_TIME = "fire_time";
+        //Fire time as a local wall clock time, kept across time zone changes (can be null)
+        public static final String LOCAL_TIME = "local_time";
+    }
+
+    /* Columns of the single row returned by the stats route */
+    public static final class StatsColumns {
+        //Number of tasks
+        public static final String TOTAL = "total";
+        //Tasks not yet completed
+        public static final String ACTIVE = "active";
+        //Open tasks due before now
+        public static final String OVERDUE = "overdue";
+        //Open priority tasks
+        public static final String PRIORITY = "priority";
+        //Completed tasks, until the cleanup job removes them
+        public static final String COMPLETE = "complete";
+        //Open tasks due today, in local time
+        public static final String DUE_TODAY = "due_today";
+    }
+
+    /* Columns of the metrics route, one row per provider operation and route */
+    public static final class MetricsColumns {
+        //query, insert, bulkInsert, update, delete or applyBatch
+        public static final String OPERATION = "operation";
+        //Uri path pattern the operation was made on, such as "tasks/#"
+        public static final String ROUTE = "route";
+        //Number of operations recorded
+        public static final String COUNT = "count";
+        //Rows returned, inserted, changed or deleted, summed over all operations
+        public static final String ROWS = "rows";
+        //Latency percentiles and maximum, in microseconds
+        public static final String P50_MICROS = "p50_us";
+        public static final String P90_MICROS = "p90_us";
+        public static final String P99_MICROS = "p99_us";
+        public static final String MAX_MICROS = "max_us";
+        //Median rows held by the first CursorWindow of a query result
+        public static final String WINDOW_ROWS = "window_rows";
+        //Change notifications sent, summed over all operations
+        public static final String NOTIFICATIONS = "notifications";
+    }
+
     //Unique authority string for the content provider
     public static final String CONTENT_AUTHORITY = "com.google.developer.taskmaker";
 
     /* Sort order constants */
-    //Priority first, Completed last, the rest by date
-    public static final String DEFAULT_SORT = String.format("%s ASC, %s DESC, %s ASC",
-            TaskColumns.IS_COMPLETE, TaskColumns.IS_PRIORITY, TaskColumns.DUE_DATE);
+    //Priority first, Completed last, the rest by date (ties broken by id for paging).
+    //SQLite sorts NULL first, so the IS NULL term moves undated tasks to the end of their group.
+    public static final String DEFAULT_SORT = String.format(
+            "%1$s ASC, %2$s DESC, %3$s IS NULL ASC, %3$s ASC, %4$s ASC",
+            TaskColumns.IS_COMPLETE, TaskColumns.IS_PRIORITY, TaskColumns.DUE_DATE,
+            TaskColumns._ID);
+
+    //Completed last, then by date with undated tasks last, followed by priority
+    //(ties broken by id for paging)
+    public static final String DATE_SORT = String.format(
+            "%1$s ASC, %2$s IS NULL ASC, %2$s ASC, %3$s DESC, %4$s ASC",
+            TaskColumns.IS_COMPLETE, TaskColumns.DUE_DATE, TaskColumns.IS_PRIORITY,
+            TaskColumns._ID);
+
+    //Content Uri of the pending reminder queue
+    public static final Uri REMINDERS_URI = new Uri.Builder().scheme("content")
+            .authority(CONTENT_AUTHORITY)
+            .appendPath(TABLE_REMINDERS)
+            .build();
+
+    /* Keyset paging query parameters */
+    //Maximum number of rows to return
+    public static final String PARAM_LIMIT = "limit";
+    //Sort key of the last row of the previous page, after_due is absent if it has no date
+    public static final String PARAM_AFTER_ID = "after_id";
+    public static final String PARAM_AFTER_COMPLETE = "after_complete";
+    public static final String PARAM_AFTER_PRIORITY = "after_priority";
+    public static final String PARAM_AFTER_DUE = "after_due";
+
+    //Number of rows fetched per page of the task list
+    public static final int PAGE_SIZE = 50;
+
+    /* Filtered task lists, appended to CONTENT_URI */
+    //Tasks not yet completed
+    public static final String PATH_ACTIVE = "active";
+    //Open tasks due before the "now" parameter (defaults to the current time)
+    public static final String PATH_OVERDUE = "overdue";
+    //Open priority tasks
+    public static final String PATH_PRIORITY = "priority";
+    //Tasks due in ["from", "to")
+    public static final String PATH_DUE = "due";
+    //Tasks whose description matches the words of "q", best matches first
+    public static final String PATH_SEARCH = "search";
+    //Single row of task counts (see StatsColumns) as of "now"
+    public static final String PATH_STATS = "stats";
+    //Provider operation metrics (see MetricsColumns), while recording is enabled
+    public static final String PATH_METRICS = "_metrics";
 
-    //Completed last, then by date, followed by priority
-    public static final String DATE_SORT = String.format("%s ASC, %s ASC, %s DESC",
-            TaskColumns.IS_COMPLETE, TaskColumns.DUE_DATE, TaskColumns.IS_PRIORITY);
+    /* Filter query parameters, times in milliseconds */
+    public static final String PARAM_NOW = "now";
+    public static final String PARAM_FROM = "from";
+    public static final String PARAM_TO = "to";
+    public static final String PARAM_QUERY = "q";
+
+    /* Default projections of the filtered lists */
+    //Everything a row of the task list shows
+    public static final String[] LIST_PROJECTION = {
+            TaskColumns._ID,
+            TaskColumns.DESCRIPTION,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE
+    };
+    //Enough to remind of a task
+    public static final String[] DUE_PROJECTION = {
+            TaskColumns._ID,
+            TaskColumns.DESCRIPTION,
+            TaskColumns.DUE_DATE
+    };
+
+    /* Provider call() methods and result keys */
+    //Hit and miss counts of the provider's single task cache
+    public static final String METHOD_CACHE_STATS = "cache_stats";
+    public static final String KEY_CACHE_HITS = "hits";
+    public static final String KEY_CACHE_MISSES = "misses";
+    //Turn metrics recording on or off with "true" or "false", or with no argument just
+    //return whether it is on
+    public static final String METHOD_SET_METRICS_ENABLED = "set_metrics_enabled";
+    //Drop the metrics recorded so far
+    public static final String METHOD_RESET_METRICS = "reset_metrics";
+    //Whether metrics are being recorded, returned by both metrics methods
+    public static final String KEY_METRICS_ENABLED = "metrics_enabled";
+    //Delete up to the argument's number of completed tasks, returning how many went.
+    //Observers and cached tasks are left alone until METHOD_PURGE_FINISHED
+    public static final String METHOD_PURGE_COMPLETED = "purge_completed";
+    public static final String KEY_PURGED_COUNT = "purged_count";
+    //Drop cached tasks and notify observers once, after a series of purges
+    public static final String METHOD_PURGE_FINISHED = "purge_finished";
 
     //Base content Uri for accessing the provider
     public static final Uri CONTENT_URI = new Uri.Builder().scheme("content")
@@ -37,6 +172,74 @@ public class DatabaseContract {
             .appendPath(TABLE_TASKS)
             .build();
 
+    //Content Uris of the filtered task lists
+    public static final Uri ACTIVE_URI = CONTENT_URI.buildUpon().appendPath(PATH_ACTIVE).build();
+    public static final Uri PRIORITY_URI = CONTENT_URI.buildUpon().appendPath(PATH_PRIORITY).build();
+    public static final Uri STATS_URI = CONTENT_URI.buildUpon().appendPath(PATH_STATS).build();
+    public static final Uri METRICS_URI = CONTENT_URI.buildUpon().appendPath(PATH_METRICS).build();
+
+    /**
+     * Build a Uri for the open tasks due before a given time.
+     */
+    public static Uri buildOverdueUri(long now) {
+        return CONTENT_URI.buildUpon()
+                .appendPath(PATH_OVERDUE)
+                .appendQueryParameter(PARAM_NOW, String.valueOf(now))
+                .build();
+    }
+
+    /**
+     * Build a Uri for the tasks due at or after {@code from} and before {@code to}.
+     */
+    public static Uri buildDueBetweenUri(long from, long to) {
+        return CONTENT_URI.buildUpon()
+                .appendPath(PATH_DUE)
+                .appendQueryParameter(PARAM_FROM, String.valueOf(from))
+                .appendQueryParameter(PARAM_TO, String.valueOf(to))
+                .build();
+    }
+
+    /**
+     * Build a Uri for the tasks matching a search. Each word of the query also
+     * matches longer words starting with it.
+     */
+    public static Uri buildSearchUri(String query) {
+        return CONTENT_URI.buildUpon()
+                .appendPath(PATH_SEARCH)
+                .appendQueryParameter(PARAM_QUERY, query)
+                .build();
+    }
+
+    /**
+     * Build a Uri for the first rows of the task list in a given sort order.
+     *
+     * @param limit Maximum number of rows to return.
+     */
+    public static Uri buildPageUri(int limit) {
+        return CONTENT_URI.buildUpon()
+                .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    /**
+     * Build a Uri for the page of tasks that directly follows the given row.
+     * Must be queried with the same sort order that produced the row.
+     *
+     * @param lastTask Last task of the previous page.
+     * @param limit Maximum number of rows to return.
+     */
+    public static Uri buildNextPageUri(Task lastTask, int limit) {
+        Uri.Builder builder = CONTENT_URI.buildUpon()
+                .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                .appendQueryParameter(PARAM_AFTER_ID, String.valueOf(lastTask.id))
+                .appendQueryParameter(PARAM_AFTER_COMPLETE, lastTask.isComplete ? "1" : "0")
+                .appendQueryParameter(PARAM_AFTER_PRIORITY, lastTask.isPriority ? "1" : "0");
+        if (lastTask.hasDueDate()) {
+            builder.appendQueryParameter(PARAM_AFTER_DUE, String.valueOf(lastTask.dueDateMillis));
+        }
+        return builder.build();
+    }
+
     /* Helpers to retrieve column values */
     public static String getColumnString(Cursor cursor, String columnName) {
         return cursor.getString( cursor.getColumnIndex(columnName) );
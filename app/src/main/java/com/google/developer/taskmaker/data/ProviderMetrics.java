@@ -0,0 +1,155 @@
+package com.google.developer.taskmaker.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.google.developer.taskmaker.data.DatabaseContract.MetricsColumns;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency, row and notification counts of the provider, per operation and Uri
+ * route. Recording is skipped entirely while disabled, which costs callers one
+ * volatile read per operation. While enabled, recording never locks or
+ * allocates once an operation and route have been seen.
+ */
+class ProviderMetrics {
+
+    static final String[] COLUMNS = {
+            MetricsColumns.OPERATION,
+            MetricsColumns.ROUTE,
+            MetricsColumns.COUNT,
+            MetricsColumns.ROWS,
+            MetricsColumns.P50_MICROS,
+            MetricsColumns.P90_MICROS,
+            MetricsColumns.P99_MICROS,
+            MetricsColumns.MAX_MICROS,
+            MetricsColumns.WINDOW_ROWS,
+            MetricsColumns.NOTIFICATIONS
+    };
+
+    /* Counts of one operation on one route */
+    private static class Entry {
+        final Histogram latencyMicros = new Histogram();
+        final Histogram windowRows = new Histogram();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong notifications = new AtomicLong();
+    }
+
+    private final String[] mOperations;
+    private final String[] mRoutes;
+    //Indexed by operation * routes + route, created on first use
+    private volatile AtomicReferenceArray<Entry> mEntries;
+    private volatile boolean mEnabled;
+
+    //Change notifications sent by the operation running on each thread
+    private final ThreadLocal<int[]> mNotifications = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * @param operations Names of the recorded operations, by index.
+     * @param routes Names of the Uri routes, by index.
+     */
+    ProviderMetrics(String[] operations, String[] routes, boolean enabled) {
+        mOperations = operations;
+        mRoutes = routes;
+        mEntries = new AtomicReferenceArray<>(operations.length * routes.length);
+        mEnabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * Drop everything recorded so far.
+     */
+    void reset() {
+        mEntries = new AtomicReferenceArray<>(mOperations.length * mRoutes.length);
+    }
+
+    /**
+     * Number of change notifications sent so far on the calling thread. Taken
+     * before and after an operation, the difference is its notification fan-out.
+     */
+    int getNotificationCount() {
+        return mNotifications.get()[0];
+    }
+
+    /**
+     * Count a change notification sent on the calling thread.
+     */
+    void countNotification() {
+        if (mEnabled) {
+            mNotifications.get()[0]++;
+        }
+    }
+
+    /**
+     * Record one completed operation.
+     *
+     * @param windowRows Rows in the first CursorWindow of a query, or -1 for none.
+     * @param notifications Change notifications the operation sent.
+     */
+    void record(int operation, int route, long elapsedNanos, long rows, int windowRows,
+                int notifications) {
+        Entry entry = getEntry(operation, route);
+        entry.latencyMicros.record(elapsedNanos / 1000);
+        entry.rows.addAndGet(rows);
+        if (windowRows >= 0) {
+            entry.windowRows.record(windowRows);
+        }
+        if (notifications > 0) {
+            entry.notifications.addAndGet(notifications);
+        }
+    }
+
+    private Entry getEntry(int operation, int route) {
+        AtomicReferenceArray<Entry> entries = mEntries;
+        int index = operation * mRoutes.length + route;
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            entries.compareAndSet(index, null, new Entry());
+            entry = entries.get(index);
+        }
+        return entry;
+    }
+
+    /**
+     * Return one row per operation and route seen since the last reset.
+     */
+    Cursor toCursor() {
+        AtomicReferenceArray<Entry> entries = mEntries;
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < entries.length(); i++) {
+            Entry entry = entries.get(i);
+            if (entry == null) {
+                continue;
+            }
+
+            Histogram latency = entry.latencyMicros;
+            cursor.addRow(new Object[]{
+                    mOperations[i / mRoutes.length],
+                    mRoutes[i % mRoutes.length],
+                    latency.getCount(),
+                    entry.rows.get(),
+                    latency.getValueAtPercentile(50),
+                    latency.getValueAtPercentile(90),
+                    latency.getValueAtPercentile(99),
+                    latency.getMax(),
+                    entry.windowRows.getValueAtPercentile(50),
+                    entry.notifications.get()
+            });
+        }
+        return cursor;
+    }
+}
@@ -10,6 +10,7 @@ import static com.google.developer.taskmaker.data.DatabaseContract.*;
 public class Task {
 
     /* Constants representing missing data */
+    //In memory only, the database stores NULL for no due date
     public static final long NO_DATE = Long.MAX_VALUE;
     public static final long NO_ID = -1;
 
@@ -50,14 +51,35 @@ public class Task {
         this.description = getColumnString(cursor, TaskColumns.DESCRIPTION);
         this.isComplete = getColumnInt(cursor, TaskColumns.IS_COMPLETE) == 1;
         this.isPriority = getColumnInt(cursor, TaskColumns.IS_PRIORITY) == 1;
-        this.dueDateMillis = getColumnLong(cursor, TaskColumns.DUE_DATE);
+        int dueDateIndex = cursor.getColumnIndex(TaskColumns.DUE_DATE);
+        this.dueDateMillis = cursor.isNull(dueDateIndex) ? NO_DATE : cursor.getLong(dueDateIndex);
     }
 
     /**
      * Return true if a due date has been set on this task.
      */
     public boolean hasDueDate() {
-        return this.dueDateMillis != Long.MAX_VALUE;
+        return this.dueDateMillis != NO_DATE;
+    }
+
+    /**
+     * Return a hash of the displayed attributes of this task. Two rows with the
+     * same id and content hash render identically in the task list.
+     */
+    public int contentHash() {
+        return contentHash(description, isComplete, isPriority, dueDateMillis);
+    }
+
+    /**
+     * Hash of the displayed attributes of a task, see {@link #contentHash()}.
+     */
+    public static int contentHash(String description, boolean isComplete, boolean isPriority,
+                                  long dueDateMillis) {
+        int result = (description != null) ? description.hashCode() : 0;
+        result = 31 * result + (isComplete ? 1 : 0);
+        result = 31 * result + (isPriority ? 1 : 0);
+        result = 31 * result + (int) (dueDateMillis ^ (dueDateMillis >>> 32));
+        return result;
     }
 
 }
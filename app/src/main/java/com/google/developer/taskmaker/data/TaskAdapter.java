@@ -1,10 +1,15 @@
 package com.google.developer.taskmaker.data;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Paint;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
-import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,6 +18,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.google.developer.taskmaker.R;
+import com.google.developer.taskmaker.views.DueDateFormatter;
 import com.google.developer.taskmaker.views.TaskTitleView;
 
 public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
@@ -24,6 +30,11 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
         void onItemToggled(boolean active, int position);
     }
 
+    /* Callback for pages loaded on demand beyond the first */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(int loadedCount);
+    }
+
     /* ViewHolder for each task item */
     public class TaskHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public TaskTitleView nameView;
@@ -53,18 +64,64 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
         }
     }
 
-    private Cursor mCursor;
+    //Start fetching the next page when binding this close to the end
+    private static final int PREFETCH_DISTANCE = DatabaseContract.PAGE_SIZE / 2;
+
+    //Rows currently displayed, copied out of the swapped cursors
+    private TaskSnapshot mSnapshot = TaskSnapshot.EMPTY;
     private OnItemClickListener mOnItemClickListener;
+    private OnPageLoadedListener mOnPageLoadedListener;
     private Context mContext;
+    private DueDateFormatter mDateFormatter;
+
+    /* Keyset paging state */
+    private ContentResolver mResolver;
+    private String mSortOrder;
+    private boolean mPageLoading;
+    private boolean mEndReached;
+    //Set while a swap is being diffed, the displayed rows are about to change
+    private boolean mDiffPending;
+    //Bumped on every swap so stale page loads and diffs are discarded
+    private int mGeneration;
+    //Pages are read on the DataExecutor and appended on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     public TaskAdapter(Cursor cursor) {
-        mCursor = cursor;
+        //Row ids are unique, so views can be kept across data changes
+        setHasStableIds(true);
+        mSnapshot = TaskListLoader.snapshotOf(cursor);
     }
 
     public void setOnItemClickListener(OnItemClickListener listener) {
         mOnItemClickListener = listener;
     }
 
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mOnPageLoadedListener = listener;
+    }
+
+    /**
+     * Load further pages on demand as the list is scrolled. Cursors passed to
+     * {@link #swapCursor(Cursor)} are then treated as the first page of the list.
+     *
+     * @param context Context used to reach the content provider.
+     * @param sortOrder Sort order of the swapped cursors, one of
+     *                  {@link DatabaseContract#DEFAULT_SORT} or {@link DatabaseContract#DATE_SORT}.
+     */
+    public void enablePaging(Context context, String sortOrder) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mSortOrder = sortOrder;
+    }
+
+    /**
+     * Stop loading further pages, for lists that are not in a paged sort order
+     * such as search results.
+     */
+    public void disablePaging() {
+        mResolver = null;
+        mSortOrder = null;
+    }
+
     private void completionToggled(TaskHolder holder) {
         if (mOnItemClickListener != null) {
             mOnItemClickListener.onItemToggled(holder.checkBox.isChecked(), holder.getAdapterPosition());
@@ -80,6 +137,7 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
     @Override
     public TaskHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         mContext = parent.getContext();
+        mDateFormatter = DueDateFormatter.getInstance(mContext);
         View itemView = LayoutInflater.from(mContext)
                 .inflate(R.layout.list_item_task, parent, false);
 
@@ -91,44 +149,25 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
 
         //TODO: Bind the task data to the views
 
-        // Get the column index of the id
-        int idIndex = mCursor.getColumnIndex(DatabaseContract.TaskColumns._ID);
-
-        // Get the column index of the checkbox
-        int checkboxIndex = mCursor.getColumnIndex(DatabaseContract.TaskColumns.IS_COMPLETE);
-
-        // Get the column index of the priority
-        int priorityIndex = mCursor.getColumnIndex(DatabaseContract.TaskColumns.IS_PRIORITY);
-
-        // Get the column index of the dueDate
-        int dueDateIndex = mCursor.getColumnIndex(DatabaseContract.TaskColumns.DUE_DATE);
-
-        // Get the column index of the taskDescription
-        int taskDescriptionIndex = mCursor.getColumnIndex(DatabaseContract.TaskColumns.DESCRIPTION);
-
-        // Move cursor to position
-        mCursor.moveToPosition(position);
-
-        // Get the value of id from the cursor
-        final int id = mCursor.getInt(idIndex);
-
-        // Get the value of isComplete from the cursor
-        int isComplete = mCursor.getInt(checkboxIndex);
-
-        // Get the value of priority from the cursor
-        int priority = mCursor.getInt(priorityIndex);
-
-        // Get the value of dueDate from the cursor
-        long dueDate = Long.parseLong(mCursor.getString(dueDateIndex));
+        // Fetch the next page before the user reaches the end of this one
+        if (position >= getItemCount() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
 
-        // Get the value of taskDescription from the cursor
-        String taskDescription = mCursor.getString(taskDescriptionIndex);
+        // Read the row straight from the snapshot arrays, nothing is allocated here
+        final TaskSnapshot snapshot = mSnapshot;
+        final long id = snapshot.getId(position);
+        final long dueDate = snapshot.getDueDate(position);
 
-        // Set a tag on the itemView with the id of the Task
-        holder.itemView.setTag(id);
+        // Set a tag on the itemView with the id of the Task,
+        // skipping the boxing when the holder is rebound to the same row
+        Object tag = holder.itemView.getTag();
+        if (!(tag instanceof Long) || (Long) tag != id) {
+            holder.itemView.setTag(id);
+        }
 
         // If the Task is done...
-        if (isComplete == 1) {
+        if (snapshot.isComplete(position)) {
 
             // Check the checkbox
             holder.checkBox.setChecked(true);
@@ -158,7 +197,7 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
         }
 
         // If the Task is a priority...
-        if (priority == 1) {
+        if (snapshot.isPriority(position)) {
 
             // Set the priorityView ImageView with the priority icon
             holder.priorityView.setImageResource(R.drawable.ic_priority);
@@ -170,15 +209,15 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
         }
 
         // If there is no due date...
-        if (dueDate == Long.MAX_VALUE) {
+        if (!snapshot.hasDueDate(position)) {
 
             // Display the "Not Set" text in the dateView TextView
             holder.dateView.setText(R.string.date_empty);
 
         } else { // If there is a due date...
 
-            // Format the dueDate
-            CharSequence formatted = DateUtils.getRelativeTimeSpanString(mContext, dueDate);
+            // Format the dueDate, reusing the text already built for this date
+            CharSequence formatted = mDateFormatter.format(dueDate);
 
             // Make the dateView TextView visible
             holder.dateView.setVisibility(View.VISIBLE);
@@ -188,13 +227,13 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
         }
 
         // Set the description of the Task on the nameView TextView
-        holder.nameView.setText(taskDescription);
+        holder.nameView.setText(snapshot.getDescription(position));
 
     }
 
     @Override
     public int getItemCount() {
-        return (mCursor != null) ? mCursor.getCount() : 0;
+        return mSnapshot.getCount();
     }
 
     /**
@@ -205,25 +244,204 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskHolder> {
      * @return A new {@link Task} filled with the position's attributes.
      */
     public Task getItem(int position) {
-        if (!mCursor.moveToPosition(position)) {
+        checkPosition(position);
+        return mSnapshot.getTask(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        checkPosition(position);
+        return mSnapshot.getId(position);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSnapshot.getCount()) {
             throw new IllegalStateException("Invalid item position requested");
         }
+    }
 
-        return new Task(mCursor);
+    /**
+     * Show rows saved earlier, such as the warm start snapshot, until the first
+     * cursor is swapped in. No further pages are loaded from these rows, since
+     * they may be stale.
+     */
+    public void showSnapshot(TaskSnapshot snapshot) {
+        mGeneration++;
+        mPageLoading = false;
+        mEndReached = true;
+        mDiffPending = false;
+        mSnapshot = snapshot;
+        notifyDataSetChanged();
     }
 
-    @Override
-    public long getItemId(int position) {
-        return getItem(position).id;
+    /**
+     * Replace the displayed rows with the contents of a new cursor. Cursors of a
+     * {@link TaskListLoader} were already copied on its background thread, others
+     * are copied right away; either way the cursor may be closed once this returns.
+     * Only the rows that actually changed are updated, based on a diff computed
+     * in the background.
+     *
+     * @return The rows copied out of the cursor.
+     */
+    public TaskSnapshot swapCursor(Cursor cursor) {
+
+        // Rows copied by the loader, which closes the previous cursor after this call
+        TaskSnapshot newSnapshot = TaskListLoader.snapshotOf(cursor);
+
+        // Cancel page loads for the previous data
+        mGeneration++;
+        mPageLoading = false;
+        mEndReached = false;
+
+        // Nothing to diff against, apply the change directly
+        if (mSnapshot.getCount() == 0 || newSnapshot.getCount() == 0) {
+            mDiffPending = false;
+            mSnapshot = newSnapshot;
+            notifyDataSetChanged();
+            return newSnapshot;
+        }
+
+        // Keep showing the current rows until the diff is ready
+        mDiffPending = true;
+        new DiffTask(mGeneration, mSnapshot, newSnapshot).execute();
+        return newSnapshot;
     }
 
-    public void swapCursor(Cursor cursor) {
+    private void loadNextPage() {
+        if (mResolver == null || mPageLoading || mEndReached || mDiffPending) {
+            return;
+        }
 
-        // Get the new cursor object passed into the method
-        // and persist it as a field of the class
-        mCursor = cursor;
+        int count = getItemCount();
+        if (count == 0) {
+            mEndReached = true;
+            return;
+        }
 
-        // Notify the adapter that the data has changed
-        notifyDataSetChanged();
+        mPageLoading = true;
+        Uri pageUri = DatabaseContract.buildNextPageUri(getItem(count - 1),
+                DatabaseContract.PAGE_SIZE);
+        DataExecutor.getInstance().read(new PageTask(mResolver, pageUri, mGeneration, mSortOrder));
+    }
+
+    private void appendPage(TaskSnapshot page) {
+        int start = getItemCount();
+        mSnapshot = mSnapshot.append(page);
+
+        notifyItemRangeInserted(start, page.getCount());
+        if (mOnPageLoadedListener != null) {
+            mOnPageLoadedListener.onPageLoaded(getItemCount());
+        }
+    }
+
+    /* Query the next page on the read lane, then hand it to the main thread */
+    private class PageTask implements Runnable {
+        private final ContentResolver mTaskResolver;
+        private final Uri mPageUri;
+        private final int mTaskGeneration;
+        private final String mTaskSortOrder;
+
+        PageTask(ContentResolver resolver, Uri pageUri, int generation, String sortOrder) {
+            mTaskResolver = resolver;
+            mPageUri = pageUri;
+            mTaskGeneration = generation;
+            mTaskSortOrder = sortOrder;
+        }
+
+        @Override
+        public void run() {
+            Cursor cursor = mTaskResolver.query(mPageUri, DatabaseContract.LIST_PROJECTION,
+                    null, null, mTaskSortOrder);
+            final TaskSnapshot page;
+            try {
+                page = TaskSnapshot.fromCursor(cursor);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    applyPage(page);
+                }
+            });
+        }
+
+        private void applyPage(TaskSnapshot page) {
+            if (mTaskGeneration != mGeneration) {
+                //The data was swapped while loading, this page is stale
+                return;
+            }
+
+            mPageLoading = false;
+            mEndReached = page.getCount() < DatabaseContract.PAGE_SIZE;
+            if (page.getCount() > 0) {
+                appendPage(page);
+            }
+        }
+    }
+
+    /* Compare two snapshots of the list on a background thread */
+    private class DiffTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        private final int mTaskGeneration;
+        private final TaskSnapshot mOldItems;
+        private final TaskSnapshot mNewItems;
+
+        DiffTask(int generation, TaskSnapshot oldItems, TaskSnapshot newItems) {
+            mTaskGeneration = generation;
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... voids) {
+            return DiffUtil.calculateDiff(new TaskDiffCallback(mOldItems, mNewItems));
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult result) {
+            if (mTaskGeneration != mGeneration) {
+                //A newer swap superseded this one
+                return;
+            }
+
+            mDiffPending = false;
+            mSnapshot = mNewItems;
+            result.dispatchUpdatesTo(TaskAdapter.this);
+        }
+    }
+
+    /* Rows are matched by id, and changed when their content hash differs */
+    private static class TaskDiffCallback extends DiffUtil.Callback {
+        private final TaskSnapshot mOldItems;
+        private final TaskSnapshot mNewItems;
+
+        TaskDiffCallback(TaskSnapshot oldItems, TaskSnapshot newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.getCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.getCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.getId(oldItemPosition) == mNewItems.getId(newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            //Compares the content hash first, then the fields to rule out collisions
+            return mOldItems.contentEquals(oldItemPosition, mNewItems, newItemPosition);
+        }
     }
 }
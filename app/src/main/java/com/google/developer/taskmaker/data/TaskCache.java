@@ -0,0 +1,203 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+/**
+ * Bounded cache of single task rows for the provider's by-id lookups.
+ * Inserted rows are cached as written. Updates and deletes invalidate the
+ * row once they have committed, and the next lookup reads it again.
+ *
+ * A row read from the database is only cached if no write to its id was
+ * invalidated while it was being read, so a read that raced a write can't
+ * put the old row back. Write generations are kept per stripe of ids rather
+ * than per id, which bounds their memory at the cost of a few extra misses.
+ */
+class TaskCache {
+
+    /* Every column of the tasks table, in table order */
+    static final String[] ALL_COLUMNS = {
+            TaskColumns._ID,
+            TaskColumns.DESCRIPTION,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE
+    };
+
+    private static final int GENERATION_STRIPES = 64;
+
+    //LruCache is internally synchronized and tracks hits and misses
+    private final LruCache<Long, Task> mTasks;
+
+    //Invalidations per stripe of ids, guarded by this
+    private final long[] mGenerations = new long[GENERATION_STRIPES];
+
+    TaskCache(int maxTasks) {
+        mTasks = new LruCache<>(maxTasks);
+    }
+
+    Task get(long id) {
+        return mTasks.get(id);
+    }
+
+    /**
+     * Return the write generation of an id, taken before reading its row from
+     * the database and handed back to {@link #put(Cursor, long)}.
+     */
+    synchronized long getGeneration(long id) {
+        return mGenerations[stripeOf(id)];
+    }
+
+    /**
+     * Cache a row read from the database, unless a write to it was invalidated
+     * since the generation was taken. The cursor must be positioned on the row
+     * and contain every column.
+     *
+     * @return The task read from the cursor, whether cached or not.
+     */
+    synchronized Task put(Cursor cursor, long generation) {
+        Task task = new Task(cursor);
+        if (mGenerations[stripeOf(task.id)] == generation) {
+            mTasks.put(task.id, task);
+        }
+        return task;
+    }
+
+    /**
+     * Cache a newly inserted row if the values describe it completely.
+     */
+    synchronized void putInserted(long id, ContentValues values) {
+        if (!values.containsKey(TaskColumns.DESCRIPTION)
+                || !values.containsKey(TaskColumns.IS_COMPLETE)
+                || !values.containsKey(TaskColumns.IS_PRIORITY)
+                || !values.containsKey(TaskColumns.DUE_DATE)) {
+            return;
+        }
+
+        Task task = merge(new Task(null, false, false), values);
+        task.id = id;
+        mTasks.put(id, task);
+    }
+
+    /**
+     * Drop the cached copy of a row after a committed update or delete of it.
+     */
+    synchronized void invalidate(long id) {
+        mGenerations[stripeOf(id)]++;
+        mTasks.remove(id);
+    }
+
+    /**
+     * Drop every cached row, after a write to rows that aren't known by id.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < mGenerations.length; i++) {
+            mGenerations[i]++;
+        }
+        mTasks.evictAll();
+    }
+
+    private static int stripeOf(long id) {
+        return (int) (id & (GENERATION_STRIPES - 1));
+    }
+
+    int getHitCount() {
+        return mTasks.hitCount();
+    }
+
+    int getMissCount() {
+        return mTasks.missCount();
+    }
+
+    /**
+     * Build a single row cursor for a cached task.
+     *
+     * @param projection Requested columns, or null for all of them.
+     */
+    static Cursor toCursor(Task task, String[] projection) {
+        String[] columns = (projection != null) ? projection : ALL_COLUMNS;
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = valueOf(task, columns[i]);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /**
+     * Build an empty cursor for a task that doesn't exist.
+     *
+     * @param projection Requested columns, or null for all of them.
+     */
+    static Cursor emptyCursor(String[] projection) {
+        return new MatrixCursor((projection != null) ? projection : ALL_COLUMNS, 0);
+    }
+
+    /**
+     * Return true if every requested column can be served from a cached {@link Task}.
+     */
+    static boolean canServe(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (!isTaskColumn(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTaskColumn(String column) {
+        for (String known : ALL_COLUMNS) {
+            if (known.equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object valueOf(Task task, String column) {
+        switch (column) {
+            case TaskColumns._ID:
+                return task.id;
+            case TaskColumns.DESCRIPTION:
+                return task.description;
+            case TaskColumns.IS_COMPLETE:
+                return task.isComplete ? 1 : 0;
+            case TaskColumns.IS_PRIORITY:
+                return task.isPriority ? 1 : 0;
+            case TaskColumns.DUE_DATE:
+                return task.hasDueDate() ? task.dueDateMillis : null;
+            default:
+                throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    /* Overlay written values onto a task */
+    private static Task merge(Task task, ContentValues values) {
+        String description = values.containsKey(TaskColumns.DESCRIPTION)
+                ? values.getAsString(TaskColumns.DESCRIPTION) : task.description;
+        boolean isComplete = values.containsKey(TaskColumns.IS_COMPLETE)
+                ? isSet(values.getAsInteger(TaskColumns.IS_COMPLETE)) : task.isComplete;
+        boolean isPriority = values.containsKey(TaskColumns.IS_PRIORITY)
+                ? isSet(values.getAsInteger(TaskColumns.IS_PRIORITY)) : task.isPriority;
+        long dueDate = task.dueDateMillis;
+        if (values.containsKey(TaskColumns.DUE_DATE)) {
+            Long value = values.getAsLong(TaskColumns.DUE_DATE);
+            dueDate = (value != null) ? value : Task.NO_DATE;
+        }
+
+        return new Task(description, isComplete, isPriority, dueDate);
+    }
+
+    private static boolean isSet(Integer flag) {
+        return flag != null && flag == 1;
+    }
+}
@@ -4,50 +4,322 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.google.developer.taskmaker.R;
+import com.google.developer.taskmaker.data.DatabaseContract.ReminderColumns;
 import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
 
 public class TaskDbHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "tasks.db";
-    private static final int DATABASE_VERSION = 1;
+    /*
+     * Schema history:
+     * 1 - Initial tasks table
+     * 2 - Sort order and cleanup indexes
+     * 3 - Pending reminder queue
+     * 4 - Local wall clock time of reminders
+     * 5 - Full-text index of descriptions
+     * 6 - Strictly typed flags and due date, NULL for no due date
+     * 7 - Sort indexes with undated tasks last
+     */
+    private static final int DATABASE_VERSION = 7;
 
-    private static final String SQL_CREATE_TABLE_TASKS = String.format("CREATE TABLE %s"
-            +" (%s INTEGER PRIMARY KEY AUTOINCREMENT, %s TEXT, %s INTEGER, %s INTEGER, %s INTEGER)",
-            DatabaseContract.TABLE_TASKS,
+    //Stands for "no due date" up to version 5
+    private static final long LEGACY_NO_DATE = Long.MAX_VALUE;
+
+    /*
+     * Flags only hold 0 or 1, and the due date is an integer or NULL. The checks
+     * stand in for STRICT tables, which need SQLite 3.37.
+     */
+    private static final String SQL_CREATE_TABLE_TASKS = "CREATE TABLE %s"
+            + String.format(" (%1$s INTEGER PRIMARY KEY AUTOINCREMENT, %2$s TEXT,"
+                            + " %3$s INTEGER NOT NULL DEFAULT 0 CHECK (%3$s IN (0, 1)),"
+                            + " %4$s INTEGER NOT NULL DEFAULT 0 CHECK (%4$s IN (0, 1)),"
+                            + " %5$s INTEGER CHECK (%5$s IS NULL OR typeof(%5$s) = 'integer'))",
+                    TaskColumns._ID,
+                    TaskColumns.DESCRIPTION,
+                    TaskColumns.IS_COMPLETE,
+                    TaskColumns.IS_PRIORITY,
+                    TaskColumns.DUE_DATE);
+
+    //Copies tasks from the version 5 table, replacing the no date sentinel with NULL
+    private static final String SQL_COPY_TASKS_STRICT = String.format(
+            "INSERT INTO %6$s (%1$s, %2$s, %3$s, %4$s, %5$s)"
+                    + " SELECT %1$s, %2$s,"
+                    + " CASE WHEN %3$s = 1 THEN 1 ELSE 0 END,"
+                    + " CASE WHEN %4$s = 1 THEN 1 ELSE 0 END,"
+                    + " CASE WHEN %5$s = %8$d THEN NULL ELSE CAST(%5$s AS INTEGER) END"
+                    + " FROM %7$s",
             TaskColumns._ID,
             TaskColumns.DESCRIPTION,
             TaskColumns.IS_COMPLETE,
             TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE,
+            "tasks_strict",
+            DatabaseContract.TABLE_TASKS,
+            LEGACY_NO_DATE);
+
+    /*
+     * Composite indexes matching DEFAULT_SORT and DATE_SORT column for column, so the
+     * list queries walk the index in order instead of building a temp B-tree.
+     * SQLite appends the rowid (_id) to every index entry, which keeps both usable
+     * for _id lookups and tie-breaks. The leading is_complete column also serves the
+     * cleanup job's "is_complete = ?" delete without a separate index.
+     *
+     * The "due_date IS NULL" term that keeps undated tasks last needs an index on an
+     * expression, which SQLite supports from 3.9 (Android N). Older releases index
+     * the plain columns instead, and sort each group's undated tasks after reading.
+     */
+    private static final String SQL_CREATE_INDEX_DEFAULT_SORT = String.format(
+            "CREATE INDEX IF NOT EXISTS %1$s ON %2$s (%3$s ASC, %4$s DESC, %5$s IS NULL ASC, %5$s ASC)",
+            DatabaseContract.INDEX_DEFAULT_SORT,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
             TaskColumns.DUE_DATE
     );
 
+    private static final String SQL_CREATE_INDEX_DATE_SORT = String.format(
+            "CREATE INDEX IF NOT EXISTS %1$s ON %2$s (%3$s ASC, %4$s IS NULL ASC, %4$s ASC, %5$s DESC)",
+            DatabaseContract.INDEX_DATE_SORT,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.DUE_DATE,
+            TaskColumns.IS_PRIORITY
+    );
+
+    private static final String SQL_CREATE_INDEX_DEFAULT_SORT_COLUMNS = String.format(
+            "CREATE INDEX IF NOT EXISTS %s ON %s (%s ASC, %s DESC, %s ASC)",
+            DatabaseContract.INDEX_DEFAULT_SORT,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE
+    );
+
+    private static final String SQL_CREATE_INDEX_DATE_SORT_COLUMNS = String.format(
+            "CREATE INDEX IF NOT EXISTS %s ON %s (%s ASC, %s ASC, %s DESC)",
+            DatabaseContract.INDEX_DATE_SORT,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.DUE_DATE,
+            TaskColumns.IS_PRIORITY
+    );
+
+    //One pending reminder per task, removed along with its task
+    private static final String SQL_CREATE_TABLE_REMINDERS = String.format("CREATE TABLE %s"
+            + " (%s INTEGER PRIMARY KEY REFERENCES %s(%s) ON DELETE CASCADE,"
+            + " %s INTEGER NOT NULL)",
+            DatabaseContract.TABLE_REMINDERS,
+            ReminderColumns.TASK_ID,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns._ID,
+            ReminderColumns.FIRE_TIME
+    );
+
+    private static final String SQL_CREATE_INDEX_REMINDER_TIME = String.format(
+            "CREATE INDEX IF NOT EXISTS %s ON %s (%s ASC)",
+            DatabaseContract.INDEX_REMINDER_TIME,
+            DatabaseContract.TABLE_REMINDERS,
+            ReminderColumns.FIRE_TIME
+    );
+
+    private static final String SQL_ADD_REMINDER_LOCAL_TIME = String.format(
+            "ALTER TABLE %s ADD COLUMN %s INTEGER",
+            DatabaseContract.TABLE_REMINDERS,
+            ReminderColumns.LOCAL_TIME
+    );
+
+    /*
+     * External content FTS4 table: it stores only the index and reads the text
+     * from the tasks table, with docid equal to the task _id. The triggers keep
+     * the index in sync, and only run when the description itself changes.
+     */
+    private static final String SQL_CREATE_TABLE_TASKS_FTS = String.format(
+            "CREATE VIRTUAL TABLE %s USING fts4(content=\"%s\", %s)",
+            DatabaseContract.TABLE_TASKS_FTS,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns.DESCRIPTION
+    );
+
+    private static final String[] SQL_CREATE_FTS_TRIGGERS = {
+            String.format("CREATE TRIGGER %1$s_ai AFTER INSERT ON %1$s BEGIN"
+                            + " INSERT INTO %2$s(docid, %3$s) VALUES (new.%4$s, new.%3$s); END",
+                    DatabaseContract.TABLE_TASKS, DatabaseContract.TABLE_TASKS_FTS,
+                    TaskColumns.DESCRIPTION, TaskColumns._ID),
+            String.format("CREATE TRIGGER %1$s_bd BEFORE DELETE ON %1$s BEGIN"
+                            + " DELETE FROM %2$s WHERE docid = old.%3$s; END",
+                    DatabaseContract.TABLE_TASKS, DatabaseContract.TABLE_TASKS_FTS,
+                    TaskColumns._ID),
+            String.format("CREATE TRIGGER %1$s_bu BEFORE UPDATE OF %3$s ON %1$s BEGIN"
+                            + " DELETE FROM %2$s WHERE docid = old.%4$s; END",
+                    DatabaseContract.TABLE_TASKS, DatabaseContract.TABLE_TASKS_FTS,
+                    TaskColumns.DESCRIPTION, TaskColumns._ID),
+            String.format("CREATE TRIGGER %1$s_au AFTER UPDATE OF %3$s ON %1$s BEGIN"
+                            + " INSERT INTO %2$s(docid, %3$s) VALUES (new.%4$s, new.%3$s); END",
+                    DatabaseContract.TABLE_TASKS, DatabaseContract.TABLE_TASKS_FTS,
+                    TaskColumns.DESCRIPTION, TaskColumns._ID)
+    };
+
+    //Page cache of the writer connection, negative values are in KiB (here 2 MB)
+    private static final int CACHE_SIZE_KIB = 2048;
+
     private final Context mContext;
 
     public TaskDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, true);
+    }
+
+    /*
+     * Open a named database, with or without write-ahead logging.
+     * Visible for benchmarks comparing both journal modes.
+     */
+    /*package*/ TaskDbHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
         mContext = context;
+
+        //Readers get their own pooled connections and no longer wait on writers
+        setWriteAheadLoggingEnabled(writeAheadLogging);
+    }
+
+    /*
+     * Runs on the primary (writer) connection each time it is opened.
+     * Pooled read connections are sized by the platform and keep their defaults.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        //Needed for reminders to cascade with their tasks
+        db.setForeignKeyConstraintsEnabled(true);
+        if (db.isWriteAheadLoggingEnabled()) {
+            //With WAL, NORMAL only syncs at checkpoints and stays crash safe
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(SQL_CREATE_TABLE_TASKS);
+        db.execSQL(String.format(SQL_CREATE_TABLE_TASKS, DatabaseContract.TABLE_TASKS));
+        createIndexes(db);
+        createReminders(db);
+        addReminderLocalTime(db);
+        createSearchIndex(db);
         loadDemoTask(db);
     }
 
+    /*
+     * Each step migrates from one version to the next and falls through to the
+     * following one, so any older schema is brought forward without losing tasks.
+     * SQLiteOpenHelper already runs this inside a single transaction.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        switch (oldVersion) {
+            case 1:
+                createIndexes(db);
+                // Fall through to the next migration step
+            case 2:
+                createReminders(db);
+                // Fall through to the next migration step
+            case 3:
+                //Existing reminders keep their absolute fire time
+                addReminderLocalTime(db);
+                // Fall through to the next migration step
+            case 4:
+                createSearchIndex(db);
+                // Fall through to the next migration step
+            case 5:
+                rebuildTasksStrict(db);
+                // Fall through to the next migration step
+            case 6:
+                recreateIndexes(db);
+                // Fall through to the next migration step
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        //Unknown future schema, start over rather than guess at its layout
+        db.execSQL("DROP TABLE IF EXISTS " + DatabaseContract.TABLE_TASKS_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + DatabaseContract.TABLE_REMINDERS);
         db.execSQL("DROP TABLE IF EXISTS " + DatabaseContract.TABLE_TASKS);
         onCreate(db);
     }
 
+    private void createIndexes(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            db.execSQL(SQL_CREATE_INDEX_DEFAULT_SORT);
+            db.execSQL(SQL_CREATE_INDEX_DATE_SORT);
+        } else {
+            db.execSQL(SQL_CREATE_INDEX_DEFAULT_SORT_COLUMNS);
+            db.execSQL(SQL_CREATE_INDEX_DATE_SORT_COLUMNS);
+        }
+        //Refresh planner statistics so the new indexes are picked up immediately
+        db.execSQL("ANALYZE " + DatabaseContract.TABLE_TASKS);
+    }
+
+    private void recreateIndexes(SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS " + DatabaseContract.INDEX_DEFAULT_SORT);
+        db.execSQL("DROP INDEX IF EXISTS " + DatabaseContract.INDEX_DATE_SORT);
+        createIndexes(db);
+    }
+
+    private void createReminders(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_TABLE_REMINDERS);
+        db.execSQL(SQL_CREATE_INDEX_REMINDER_TIME);
+    }
+
+    private void addReminderLocalTime(SQLiteDatabase db) {
+        db.execSQL(SQL_ADD_REMINDER_LOCAL_TIME);
+    }
+
+    private void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_TABLE_TASKS_FTS);
+        createSearchTriggers(db);
+    }
+
+    private void createSearchTriggers(SQLiteDatabase db) {
+        for (String trigger : SQL_CREATE_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+        //Index the tasks that already exist
+        db.execSQL(String.format("INSERT INTO %1$s(%1$s) VALUES ('rebuild')",
+                DatabaseContract.TABLE_TASKS_FTS));
+    }
+
+    /*
+     * SQLite cannot add constraints to an existing table, so the tasks are copied
+     * into a new one that replaces it. Dropping the old table cascades to the
+     * reminders, so they are set aside first and restored afterwards. Its indexes
+     * and triggers go with the old table and are created again.
+     */
+    private void rebuildTasksStrict(SQLiteDatabase db) {
+        db.execSQL("CREATE TEMP TABLE reminders_backup AS SELECT * FROM "
+                + DatabaseContract.TABLE_REMINDERS);
+
+        db.execSQL(String.format(SQL_CREATE_TABLE_TASKS, "tasks_strict"));
+        db.execSQL(SQL_COPY_TASKS_STRICT);
+        db.execSQL("DROP TABLE " + DatabaseContract.TABLE_TASKS);
+        db.execSQL("ALTER TABLE tasks_strict RENAME TO " + DatabaseContract.TABLE_TASKS);
+
+        db.execSQL("INSERT INTO " + DatabaseContract.TABLE_REMINDERS
+                + " SELECT * FROM reminders_backup");
+        db.execSQL("DROP TABLE reminders_backup");
+
+        createIndexes(db);
+        createSearchTriggers(db);
+    }
+
     private void loadDemoTask(SQLiteDatabase db) {
         ContentValues values = new ContentValues();
         values.put(TaskColumns.DESCRIPTION, mContext.getResources().getString(R.string.demo_task));
         values.put(TaskColumns.IS_COMPLETE, 0);
         values.put(TaskColumns.IS_PRIORITY, 1);
-        values.put(TaskColumns.DUE_DATE, Long.MAX_VALUE);
+        values.putNull(TaskColumns.DUE_DATE);
 
         db.insertOrThrow(DatabaseContract.TABLE_TASKS, null, values);
     }
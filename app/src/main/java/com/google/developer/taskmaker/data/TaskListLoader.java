@@ -0,0 +1,59 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * CursorLoader for the task list that also copies the loaded rows into a
+ * {@link TaskSnapshot} on its background thread, so swapping them into the
+ * {@link TaskAdapter} never walks the cursor on the main thread.
+ */
+public class TaskListLoader extends CursorLoader {
+
+    /* A loaded cursor along with the rows copied out of it */
+    private static class SnapshotCursor extends CursorWrapper {
+        private final TaskSnapshot mSnapshot;
+
+        SnapshotCursor(Cursor cursor, TaskSnapshot snapshot) {
+            super(cursor);
+            mSnapshot = snapshot;
+        }
+    }
+
+    public TaskListLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context, uri, projection, null, null, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            TaskSnapshot snapshot = TaskSnapshot.fromCursor(cursor);
+            cursor.moveToPosition(-1);
+            return new SnapshotCursor(cursor, snapshot);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Return the rows of a cursor, already copied if it came from this loader.
+     * Other cursors are copied on the calling thread.
+     *
+     * @param cursor Cursor over the tasks table, may be null.
+     */
+    public static TaskSnapshot snapshotOf(Cursor cursor) {
+        if (cursor instanceof SnapshotCursor) {
+            return ((SnapshotCursor) cursor).mSnapshot;
+        }
+        return TaskSnapshot.fromCursor(cursor);
+    }
+}
@@ -4,16 +4,33 @@ import android.app.job.JobInfo;
 import android.app.job.JobScheduler;
 import android.content.ComponentName;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.AbstractWindowedCursor;
+import android.database.CursorWindow;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.google.developer.taskmaker.data.DatabaseContract.ReminderColumns;
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
 public class TaskProvider extends ContentProvider {
     private static final String TAG = TaskProvider.class.getSimpleName();
 
@@ -21,8 +38,106 @@ public class TaskProvider extends ContentProvider {
 
     private static final int TASKS = 100;
     private static final int TASKS_WITH_ID = 101;
+    private static final int TASKS_ACTIVE = 102;
+    private static final int TASKS_OVERDUE = 103;
+    private static final int TASKS_PRIORITY = 104;
+    private static final int TASKS_DUE = 105;
+    private static final int TASKS_SEARCH = 106;
+    private static final int TASKS_STATS = 107;
+    private static final int TASKS_METRICS = 108;
+    private static final int REMINDERS = 200;
+    private static final int REMINDERS_WITH_ID = 201;
+
+    /*
+     * Filters of the task list routes. Each starts with is_complete so it is
+     * answered by a range scan of one of the sort indexes.
+     */
+    private static final String WHERE_ACTIVE = TaskColumns.IS_COMPLETE + " = 0";
+    //Walks the date sort index (is_complete, due_date) up to "now"
+    private static final String WHERE_OVERDUE = TaskColumns.IS_COMPLETE + " = 0 AND "
+            + TaskColumns.DUE_DATE + " < ?";
+    //Prefix of the default sort index (is_complete, is_priority)
+    private static final String WHERE_PRIORITY = TaskColumns.IS_COMPLETE + " = 0 AND "
+            + TaskColumns.IS_PRIORITY + " = 1";
+    //The IN list lets both halves of the date sort index be range scanned
+    private static final String WHERE_DUE = TaskColumns.IS_COMPLETE + " IN (0, 1) AND "
+            + TaskColumns.DUE_DATE + " >= ? AND " + TaskColumns.DUE_DATE + " < ?";
+
+    private static final String SORT_BY_DUE_DATE = TaskColumns.DUE_DATE + " ASC";
+
+    private static final String WHERE_ID = TaskColumns._ID + " = ?";
+
+    //Bounded subquery so each purge touches at most one batch of completed rows
+    private static final String WHERE_PURGE = String.format(
+            "%1$s IN (SELECT %1$s FROM %2$s WHERE %3$s = 1 LIMIT ?)",
+            TaskColumns._ID,
+            DatabaseContract.TABLE_TASKS,
+            TaskColumns.IS_COMPLETE);
+
+    /* Operations and routes the metrics are recorded under */
+    private static final int OP_QUERY = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_BULK_INSERT = 2;
+    private static final int OP_UPDATE = 3;
+    private static final int OP_DELETE = 4;
+    private static final int OP_APPLY_BATCH = 5;
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulkInsert", "update", "delete", "applyBatch"
+    };
+
+    private static final int ROUTE_UNKNOWN = 10;
+    //A batch spans routes, it is recorded as a whole under this one
+    private static final int ROUTE_BATCH = 11;
+    private static final String[] ROUTE_NAMES = {
+            "tasks", "tasks/#", "tasks/active", "tasks/overdue", "tasks/priority",
+            "tasks/due", "tasks/search", "tasks/stats", "reminders", "reminders/#",
+            "unknown", "batch"
+    };
+
+    /*
+     * Full-text search, joining the matches back to their tasks. offsets() lists
+     * every matched term, so its length roughly ranks tasks by how much of them
+     * matched. Ties show open tasks first. Visible for the search benchmark.
+     */
+    /*package*/ static final String SQL_SEARCH = String.format(
+            "SELECT t.%1$s, t.%2$s, t.%3$s, t.%4$s, t.%5$s FROM %6$s t"
+                    + " JOIN (SELECT docid, length(offsets(%7$s)) AS score"
+                    + " FROM %7$s WHERE %7$s MATCH ?) m ON t.%1$s = m.docid"
+                    + " ORDER BY m.score DESC, t.%3$s ASC, t.%1$s ASC LIMIT ?",
+            TaskColumns._ID,
+            TaskColumns.DESCRIPTION,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE,
+            DatabaseContract.TABLE_TASKS,
+            DatabaseContract.TABLE_TASKS_FTS);
+
+    //Most recently read or written single tasks
+    private static final int CACHE_SIZE = 256;
 
     private TaskDbHelper mDbHelper;
+    private final TaskCache mCache = new TaskCache(CACHE_SIZE);
+    private final TaskStats mStats = new TaskStats();
+    //Only recorded once turned on from the metrics screen, as timing a query
+    //also runs it to the end, which skews what it measures
+    private final ProviderMetrics mMetrics =
+            new ProviderMetrics(OPERATION_NAMES, ROUTE_NAMES, false);
+    private TaskStatements mStatements;
+
+    //Set while applyBatch runs on the calling thread, defers work until it commits
+    private final ThreadLocal<PendingBatch> mBatch = new ThreadLocal<>();
+
+    /* Work of the operations of a batch that waits until the batch has committed */
+    private static class PendingBatch {
+        //Some operation marked a task as done
+        boolean markCompleted;
+        //Tasks written by the batch, whose cached copies are dropped on commit
+        final ArrayList<Long> writtenIds = new ArrayList<>();
+        //Tasks were written that aren't known by id
+        boolean clearCache;
+        //Uris of the written tasks, notified on commit. Reminders are never added
+        final LinkedHashSet<Uri> notifyUris = new LinkedHashSet<>();
+    }
 
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
@@ -36,25 +151,261 @@ public class TaskProvider extends ContentProvider {
         sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
                 DatabaseContract.TABLE_TASKS + "/#",
                 TASKS_WITH_ID);
+
+        // content://com.google.developer.taskmaker/tasks/active
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_ACTIVE,
+                TASKS_ACTIVE);
+
+        // content://com.google.developer.taskmaker/tasks/overdue?now=
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_OVERDUE,
+                TASKS_OVERDUE);
+
+        // content://com.google.developer.taskmaker/tasks/priority
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_PRIORITY,
+                TASKS_PRIORITY);
+
+        // content://com.google.developer.taskmaker/tasks/due?from=&to=
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_DUE,
+                TASKS_DUE);
+
+        // content://com.google.developer.taskmaker/tasks/search?q=
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_SEARCH,
+                TASKS_SEARCH);
+
+        // content://com.google.developer.taskmaker/tasks/stats
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_STATS,
+                TASKS_STATS);
+
+        // content://com.google.developer.taskmaker/tasks/_metrics
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_TASKS + "/" + DatabaseContract.PATH_METRICS,
+                TASKS_METRICS);
+
+        // content://com.google.developer.taskmaker/reminders
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_REMINDERS,
+                REMINDERS);
+
+        // content://com.google.developer.taskmaker/reminders/taskId
+        sUriMatcher.addURI(DatabaseContract.CONTENT_AUTHORITY,
+                DatabaseContract.TABLE_REMINDERS + "/#",
+                REMINDERS_WITH_ID);
     }
 
     @Override
     public boolean onCreate() {
+        //Runs during process startup, before Application.onCreate. Nothing here
+        //touches the disk, the database is opened by the first query or write
         mDbHelper = new TaskDbHelper(getContext());
-        manageCleanupJob();
+        mStatements = new TaskStatements(mDbHelper);
+
+        //Checking for the job means Binder calls to the system, keep them off startup
+        DataExecutor.getInstance().write(CleanupJobService.WRITE_KEY, new Runnable() {
+            @Override
+            public void run() {
+                manageCleanupJob();
+            }
+        });
         return true;
     }
 
+    /**
+     * Handles {@link DatabaseContract#METHOD_CACHE_STATS}, returning the hit and
+     * miss counts of the single task cache, and the metrics methods
+     * {@link DatabaseContract#METHOD_SET_METRICS_ENABLED} and
+     * {@link DatabaseContract#METHOD_RESET_METRICS}, and the cleanup methods
+     * {@link DatabaseContract#METHOD_PURGE_COMPLETED} and
+     * {@link DatabaseContract#METHOD_PURGE_FINISHED}.
+     */
+    @Nullable
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (DatabaseContract.METHOD_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putInt(DatabaseContract.KEY_CACHE_HITS, mCache.getHitCount());
+            stats.putInt(DatabaseContract.KEY_CACHE_MISSES, mCache.getMissCount());
+            return stats;
+        } else if (DatabaseContract.METHOD_SET_METRICS_ENABLED.equals(method)) {
+            if (arg != null) {
+                mMetrics.setEnabled(Boolean.parseBoolean(arg));
+            }
+            return getMetricsState();
+        } else if (DatabaseContract.METHOD_RESET_METRICS.equals(method)) {
+            mMetrics.reset();
+            return getMetricsState();
+        } else if (DatabaseContract.METHOD_PURGE_COMPLETED.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(DatabaseContract.KEY_PURGED_COUNT, purgeCompleted(Integer.parseInt(arg)));
+            return result;
+        } else if (DatabaseContract.METHOD_PURGE_FINISHED.equals(method)) {
+            //The purged rows are unknown, so is what changed for observers
+            taskWritten(-1);
+            notifyChange(DatabaseContract.CONTENT_URI);
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+     * Delete up to limit completed tasks. Leaves the cache and observers to
+     * METHOD_PURGE_FINISHED, so a cleanup pass drops and notifies them once.
+     */
+    private int purgeCompleted(int limit) {
+        return mDbHelper.getWritableDatabase().delete(DatabaseContract.TABLE_TASKS,
+                WHERE_PURGE, new String[]{String.valueOf(limit)});
+    }
+
+    private Bundle getMetricsState() {
+        Bundle state = new Bundle();
+        state.putBoolean(DatabaseContract.KEY_METRICS_ENABLED, mMetrics.isEnabled());
+        return state;
+    }
+
     @Nullable
     @Override
     public String getType(Uri uri) {
         return null; /* Not used */
     }
 
+    /*
+     * The public operations below only add timing. While metrics are disabled
+     * they call straight through to the matching do* method.
+     */
+
     @Nullable
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        if (!mMetrics.isEnabled() || sUriMatcher.match(uri) == TASKS_METRICS) {
+            return doQuery(uri, projection, selection, selectionArgs, sortOrder);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int notified = mMetrics.getNotificationCount();
+        Cursor cursor = doQuery(uri, projection, selection, selectionArgs, sortOrder);
+
+        //Runs the query and fills the first window, which the caller would do next anyway
+        int rows = cursor.getCount();
+        int windowRows = -1;
+        if (cursor instanceof AbstractWindowedCursor) {
+            CursorWindow window = ((AbstractWindowedCursor) cursor).getWindow();
+            windowRows = (window != null) ? window.getNumRows() : -1;
+        }
+
+        record(OP_QUERY, routeOf(uri), start, rows, windowRows, notified);
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        if (!mMetrics.isEnabled()) {
+            return doInsert(uri, values);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int notified = mMetrics.getNotificationCount();
+        Uri result = doInsert(uri, values);
+        record(OP_INSERT, routeOf(uri), start, (result != null) ? 1 : 0, -1, notified);
+        return result;
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        if (!mMetrics.isEnabled()) {
+            return doBulkInsert(uri, values);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int notified = mMetrics.getNotificationCount();
+        int count = doBulkInsert(uri, values);
+        record(OP_BULK_INSERT, routeOf(uri), start, count, -1, notified);
+        return count;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        if (!mMetrics.isEnabled()) {
+            return doUpdate(uri, values, selection, selectionArgs);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int notified = mMetrics.getNotificationCount();
+        int count = doUpdate(uri, values, selection, selectionArgs);
+        record(OP_UPDATE, routeOf(uri), start, count, -1, notified);
+        return count;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        if (!mMetrics.isEnabled()) {
+            return doDelete(uri, selection, selectionArgs);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int notified = mMetrics.getNotificationCount();
+        int count = doDelete(uri, selection, selectionArgs);
+        record(OP_DELETE, routeOf(uri), start, count, -1, notified);
+        return count;
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (!mMetrics.isEnabled()) {
+            return doApplyBatch(operations);
+        }
+
+        //The operations of the batch are recorded one by one as well
+        long start = SystemClock.elapsedRealtimeNanos();
+        int notified = mMetrics.getNotificationCount();
+        ContentProviderResult[] results = doApplyBatch(operations);
+        record(OP_APPLY_BATCH, ROUTE_BATCH, start, results.length, -1, notified);
+        return results;
+    }
+
+    private void record(int operation, int route, long start, long rows, int windowRows,
+                        int notifiedBefore) {
+        mMetrics.record(operation, route, SystemClock.elapsedRealtimeNanos() - start, rows,
+                windowRows, mMetrics.getNotificationCount() - notifiedBefore);
+    }
+
+    /* Index of the route of a Uri in ROUTE_NAMES */
+    private static int routeOf(Uri uri) {
+        switch (sUriMatcher.match(uri)) {
+            case TASKS:
+                return 0;
+            case TASKS_WITH_ID:
+                return 1;
+            case TASKS_ACTIVE:
+                return 2;
+            case TASKS_OVERDUE:
+                return 3;
+            case TASKS_PRIORITY:
+                return 4;
+            case TASKS_DUE:
+                return 5;
+            case TASKS_SEARCH:
+                return 6;
+            case TASKS_STATS:
+                return 7;
+            case REMINDERS:
+                return 8;
+            case REMINDERS_WITH_ID:
+                return 9;
+            default:
+                return ROUTE_UNKNOWN;
+        }
+    }
+
+    private Cursor doQuery(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                           String sortOrder) {
         //TODO: Implement task query
         //TODO: Expected "query all" Uri: content://com.google.developer.taskmaker/tasks
         //TODO: Expected "query one" Uri: content://com.google.developer.taskmaker/tasks/{id}
@@ -71,7 +422,16 @@ public class TaskProvider extends ContentProvider {
             // If the URI does not contain an ID of a single Task...
             case TASKS:
 
-                // Return a cursor that queries the database for all Tasks
+                // Restrict to the rows after the keyset of the previous page, if any
+                String[] keyset = buildKeysetSelection(uri, sortOrder);
+                if (keyset != null) {
+                    selection = appendSelection(selection, keyset[0]);
+                    selectionArgs = appendSelectionArgs(selectionArgs,
+                            Arrays.copyOfRange(keyset, 1, keyset.length));
+                }
+
+                // Return a cursor that queries the database for all Tasks,
+                // or a single page of them when a limit is given
                 returnCursor = db.query(
                         DatabaseContract.TABLE_TASKS,
                         projection,
@@ -79,7 +439,8 @@ public class TaskProvider extends ContentProvider {
                         selectionArgs,
                         null,
                         null,
-                        sortOrder
+                        sortOrder,
+                        uri.getQueryParameter(DatabaseContract.PARAM_LIMIT)
                 );
 
                 // Break from the switch statement
@@ -87,20 +448,124 @@ public class TaskProvider extends ContentProvider {
 
             // If the URI does contain an ID of a single Task...
             case TASKS_WITH_ID:
+                long id = ContentUris.parseId(uri);
+                String[] idArgs = new String[]{String.valueOf(id)};
+
+                // Columns the cache doesn't hold are always read from the database
+                if (selection != null || !TaskCache.canServe(projection)) {
+                    returnCursor = db.query(
+                            DatabaseContract.TABLE_TASKS,
+                            projection,
+                            WHERE_ID,
+                            idArgs,
+                            null,
+                            null,
+                            sortOrder
+                    );
+                    break;
+                }
+
+                // Answer from the cache when the Task is in it
+                Task task = mCache.get(id);
+                if (task == null) {
+
+                    // Read the full row whatever was asked for, so it can be cached
+                    long generation = mCache.getGeneration(id);
+                    Cursor row = db.query(
+                            DatabaseContract.TABLE_TASKS,
+                            TaskCache.ALL_COLUMNS,
+                            WHERE_ID,
+                            idArgs,
+                            null,
+                            null,
+                            null
+                    );
+                    try {
+                        if (row.moveToFirst()) {
+                            task = mCache.put(row, generation);
+                        }
+                    } finally {
+                        row.close();
+                    }
+                }
+
+                // Return only the requested columns of the Task
+                returnCursor = (task != null)
+                        ? TaskCache.toCursor(task, projection)
+                        : TaskCache.emptyCursor(projection);
 
-                // Return a cursor that queries the database for the one Task,
-                // specifying its Id in the selection parameter
+                // Break from the switch statement
+                break;
+
+            // Open Tasks, in the order of the task list
+            case TASKS_ACTIVE:
+                returnCursor = queryFiltered(db, uri, projection, selection, selectionArgs,
+                        sortOrder, WHERE_ACTIVE, null,
+                        DatabaseContract.LIST_PROJECTION, DatabaseContract.DEFAULT_SORT);
+                break;
+
+            // Open Tasks due before "now"
+            case TASKS_OVERDUE:
+                String now = uri.getQueryParameter(DatabaseContract.PARAM_NOW);
+                returnCursor = queryFiltered(db, uri, projection, selection, selectionArgs,
+                        sortOrder, WHERE_OVERDUE,
+                        new String[]{(now != null) ? now : String.valueOf(System.currentTimeMillis())},
+                        DatabaseContract.DUE_PROJECTION, SORT_BY_DUE_DATE);
+                break;
+
+            // Open priority Tasks
+            case TASKS_PRIORITY:
+                returnCursor = queryFiltered(db, uri, projection, selection, selectionArgs,
+                        sortOrder, WHERE_PRIORITY, null,
+                        DatabaseContract.LIST_PROJECTION, DatabaseContract.DEFAULT_SORT);
+                break;
+
+            // Tasks due between "from" and "to"
+            case TASKS_DUE:
+                returnCursor = queryFiltered(db, uri, projection, selection, selectionArgs,
+                        sortOrder, WHERE_DUE,
+                        new String[]{getRequiredParameter(uri, DatabaseContract.PARAM_FROM),
+                                getRequiredParameter(uri, DatabaseContract.PARAM_TO)},
+                        DatabaseContract.DUE_PROJECTION, SORT_BY_DUE_DATE);
+                break;
+
+            // Tasks matching a search, always with the list columns
+            case TASKS_SEARCH:
+                String match = buildMatchQuery(uri.getQueryParameter(DatabaseContract.PARAM_QUERY));
+                if (match == null) {
+                    returnCursor = new MatrixCursor(DatabaseContract.LIST_PROJECTION, 0);
+                    break;
+                }
+
+                String limit = uri.getQueryParameter(DatabaseContract.PARAM_LIMIT);
+                returnCursor = db.rawQuery(SQL_SEARCH,
+                        new String[]{match, (limit != null) ? limit : "-1"});
+                break;
+
+            // Provider metrics, not recorded themselves
+            case TASKS_METRICS:
+                returnCursor = mMetrics.toCursor();
+                break;
+
+            // Task counts, from memory until the next write
+            case TASKS_STATS:
+                String statsNow = uri.getQueryParameter(DatabaseContract.PARAM_NOW);
+                returnCursor = mStats.query(db, (statsNow != null)
+                        ? Long.parseLong(statsNow) : System.currentTimeMillis());
+                break;
+
+            // Pending reminders, usually read in fire time order
+            case REMINDERS:
                 returnCursor = db.query(
-                        DatabaseContract.TABLE_TASKS,
+                        DatabaseContract.TABLE_REMINDERS,
                         projection,
-                        DatabaseContract.TaskColumns._ID + " = ?",
-                        new String[]{uri.getLastPathSegment()},
+                        selection,
+                        selectionArgs,
                         null,
                         null,
-                        sortOrder
+                        sortOrder,
+                        uri.getQueryParameter(DatabaseContract.PARAM_LIMIT)
                 );
-
-                // Break from the switch statement
                 break;
 
             // In the default case...
@@ -113,8 +578,9 @@ public class TaskProvider extends ContentProvider {
         // Get the Context
         Context context = getContext();
 
-        // If the context is not null...
-        if (context != null) {
+        // If the context is not null, and the cursor isn't a metrics
+        // snapshot, which changes with every operation and is reloaded on request...
+        if (context != null && sUriMatcher.match(uri) != TASKS_METRICS) {
 
             // Register to watch this Content URI for changes
             returnCursor.setNotificationUri(context.getContentResolver(), uri);
@@ -124,9 +590,7 @@ public class TaskProvider extends ContentProvider {
         return returnCursor;
     }
 
-    @Nullable
-    @Override
-    public Uri insert(Uri uri, ContentValues values) {
+    private Uri doInsert(Uri uri, ContentValues values) {
         //TODO: Implement new task insert
         //TODO: Expected Uri: content://com.google.developer.taskmaker/tasks
 
@@ -143,18 +607,32 @@ public class TaskProvider extends ContentProvider {
             case TASKS:
 
                 // Insert the passed values into the Task table in the database
-                db.insert(
+                long id = db.insert(
                         DatabaseContract.TABLE_TASKS,
                         null,
                         values
                 );
 
-                // Get a reference to the ContentUri
-                returnUri = DatabaseContract.CONTENT_URI;
+                // Get a reference to the new Task, or null if the insert failed
+                returnUri = (id != -1)
+                        ? ContentUris.withAppendedId(DatabaseContract.CONTENT_URI, id)
+                        : null;
 
                 // Break from the switch statement
                 break;
 
+            // Reminders replace any earlier reminder for the same Task
+            case REMINDERS:
+                long taskId = db.insertWithOnConflict(
+                        DatabaseContract.TABLE_REMINDERS,
+                        null,
+                        values,
+                        SQLiteDatabase.CONFLICT_REPLACE
+                );
+                return (taskId != -1)
+                        ? ContentUris.withAppendedId(DatabaseContract.REMINDERS_URI, taskId)
+                        : null;
+
             // In the default case...
             default:
 
@@ -162,22 +640,175 @@ public class TaskProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown URI:" + uri);
         }
 
+        // If a row was inserted, notify observers of the change
+        if (returnUri != null) {
+            taskInserted(ContentUris.parseId(returnUri), values);
+            if (isMarkedComplete(values)) {
+                markCompleted();
+            }
+            notifyChange(uri);
+        }
+
+        // Return the Uri
+        return returnUri;
+    }
+
+    /**
+     * Insert all rows in a single transaction, with one change notification.
+     */
+    private int doBulkInsert(Uri uri, ContentValues[] values) {
+        if (sUriMatcher.match(uri) != TASKS) {
+            throw new UnsupportedOperationException("Unknown URI:" + uri);
+        }
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        int count = 0;
+        boolean completed = false;
+
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                if (db.insert(DatabaseContract.TABLE_TASKS, null, value) != -1) {
+                    count++;
+                    completed |= isMarkedComplete(value);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Marked once for the whole transaction, now that it has committed
+        if (completed) {
+            markCompleted();
+        }
+        if (count > 0) {
+            notifyChange(uri);
+        }
+
+        return count;
+    }
+
+    /**
+     * Apply all operations in a single transaction. Observers of the written
+     * tasks are notified once for the whole batch instead of once per operation,
+     * and not at all if it only wrote reminders.
+     */
+    private ContentProviderResult[] doApplyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        PendingBatch batch = new PendingBatch();
+
+        db.beginTransaction();
+        mBatch.set(batch);
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            mBatch.remove();
+            db.endTransaction();
+        }
+
+        // Committed, drop the cached copies of what it wrote. A rolled back
+        // batch never gets here and leaves the cache as it was.
+        if (batch.clearCache) {
+            mCache.clear();
+        } else {
+            for (long id : batch.writtenIds) {
+                mCache.invalidate(id);
+            }
+        }
+        if (batch.markCompleted) {
+            CleanupJobService.markCompleted(getContext());
+        }
+
+        // A single task Uri is notified as is, several are covered by their parent
+        if (batch.notifyUris.size() == 1) {
+            notifyChange(batch.notifyUris.iterator().next());
+        } else if (!batch.notifyUris.isEmpty()) {
+            notifyChange(DatabaseContract.CONTENT_URI);
+        }
+
+        return results;
+    }
+
+    /*
+     * Cache a newly inserted Task. Inside a batch it is only invalidated once
+     * the batch has committed, as the row may reuse the id of a deleted one.
+     */
+    private void taskInserted(long id, ContentValues values) {
+        PendingBatch batch = mBatch.get();
+        if (batch != null) {
+            batch.writtenIds.add(id);
+        } else {
+            mCache.putInserted(id, values);
+        }
+    }
+
+    /*
+     * Drop the cached copy of an updated or deleted Task, once the write has
+     * committed. Pass an id of -1 when the written Tasks aren't known.
+     */
+    private void taskWritten(long id) {
+        PendingBatch batch = mBatch.get();
+        if (batch == null) {
+            if (id == -1) {
+                mCache.clear();
+            } else {
+                mCache.invalidate(id);
+            }
+        } else if (id == -1) {
+            batch.clearCache = true;
+        } else {
+            batch.writtenIds.add(id);
+        }
+    }
+
+    /*
+     * Record that completed tasks await cleanup. Inside a batch this is done
+     * once, after the batch has committed.
+     */
+    private void markCompleted() {
+        PendingBatch batch = mBatch.get();
+        if (batch != null) {
+            batch.markCompleted = true;
+        } else {
+            CleanupJobService.markCompleted(getContext());
+        }
+    }
+
+    /*
+     * Notify observers of a committed change, unless a batch will do it once it
+     * is done. Cached stats are dropped here too, only once the write is visible,
+     * and their observers are told about writes to a single task as well.
+     */
+    private void notifyChange(Uri uri) {
+        PendingBatch batch = mBatch.get();
+        if (batch != null) {
+            batch.notifyUris.add(uri);
+            return;
+        }
+
+        mStats.invalidate();
+        mMetrics.countNotification();
+
         // Get the Context
         Context context = getContext();
 
         // If the context is not null...
         if (context != null) {
-
-            // Register to watch this Content URI for changes
             context.getContentResolver().notifyChange(uri, null);
-        }
 
-        // Return the Uri
-        return returnUri;
+            // Stats cover every task but aren't under a single task's Uri
+            if (sUriMatcher.match(uri) == TASKS_WITH_ID) {
+                mMetrics.countNotification();
+                context.getContentResolver().notifyChange(DatabaseContract.STATS_URI, null);
+            }
+        }
     }
 
-    @Override
-    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    private int doUpdate(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         //TODO: Implement existing task update
         //TODO: Expected Uri: content://com.google.developer.taskmaker/tasks/{id}
         switch (sUriMatcher.match(uri)) {
@@ -185,15 +816,6 @@ public class TaskProvider extends ContentProvider {
             // If the URI does contain an ID of a single Task...
             case TASKS_WITH_ID:
 
-                // Get the id of said Task
-                long id = ContentUris.parseId(uri);
-
-                // Create a selection filter using the _ID column of the Task column
-                selection = String.format("%s = ?", DatabaseContract.TaskColumns._ID);
-
-                // Create a selection argument using the id of the Task
-                selectionArgs = new String[]{String.valueOf(id)};
-
                 // Break from the switch statement
                 break;
 
@@ -204,26 +826,65 @@ public class TaskProvider extends ContentProvider {
                 throw new IllegalArgumentException("Illegal delete URI");
         }
 
-        // Get a reference to the writable SQLiteDatabase
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
-        // Update the Task in the database with the passed values and filters,
-        // returning the number of rows updated, if any.
-        int count = db.update(DatabaseContract.TABLE_TASKS, values, selection, selectionArgs);
+        // Get the id of said Task
+        long id = ContentUris.parseId(uri);
+
+        // Update the Task in the database, through a compiled statement for the
+        // common single column writes, returning the number of rows updated, if any.
+        int count;
+        if (isCompleteToggle(values)) {
+            count = mStatements.updateComplete(id, isMarkedComplete(values));
+        } else if (isDueDateChange(values)) {
+            count = mStatements.updateDueDate(id, values.getAsLong(TaskColumns.DUE_DATE));
+        } else {
+            count = mDbHelper.getWritableDatabase().update(DatabaseContract.TABLE_TASKS, values,
+                    WHERE_ID, new String[]{String.valueOf(id)});
+        }
 
         // If there were row(s) updated...
         if (count > 0) {
 
+            // Have the next lookup read the updated row
+            taskWritten(id);
+
+            // Remember that completed tasks are waiting for cleanup
+            if (isMarkedComplete(values)) {
+                markCompleted();
+            }
+
             // Notify observers of the change
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         // Return the number of rows updated
         return count;
     }
 
-    @Override
-    public int delete(Uri uri, String selection, String[] selectionArgs) {
+    /* True if the values only set the completed marker, to 0 or 1 */
+    private static boolean isCompleteToggle(ContentValues values) {
+        if (values == null || values.size() != 1 || !values.containsKey(TaskColumns.IS_COMPLETE)) {
+            return false;
+        }
+        Integer complete = values.getAsInteger(TaskColumns.IS_COMPLETE);
+        return complete != null && (complete == 0 || complete == 1);
+    }
+
+    /* True if the values only set or clear the due date */
+    private static boolean isDueDateChange(ContentValues values) {
+        if (values == null || values.size() != 1 || !values.containsKey(TaskColumns.DUE_DATE)) {
+            return false;
+        }
+        return values.get(TaskColumns.DUE_DATE) == null
+                || values.getAsLong(TaskColumns.DUE_DATE) != null;
+    }
+
+    /* True if the values mark a task as done */
+    private static boolean isMarkedComplete(ContentValues values) {
+        Integer complete = (values != null) ? values.getAsInteger(TaskColumns.IS_COMPLETE) : null;
+        return complete != null && complete == 1;
+    }
+
+    private int doDelete(Uri uri, String selection, String[] selectionArgs) {
 
         // Match the URI passed in
         switch (sUriMatcher.match(uri)) {
@@ -240,17 +901,24 @@ public class TaskProvider extends ContentProvider {
             // If the URI does contain an ID of a single Task...
             case TASKS_WITH_ID:
 
-                // Get the id of said Task
+                // Delete the one Task through its compiled statement
                 long id = ContentUris.parseId(uri);
-
-                // Create a selection filter using the _ID column of the Task column
-                selection = String.format("%s = ?", DatabaseContract.TaskColumns._ID);
-
-                // Create a selection argument using the id of the Task
-                selectionArgs = new String[]{String.valueOf(id)};
-
-                // Break from the switch statement
-                break;
+                int deleted = mStatements.delete(id);
+                if (deleted > 0) {
+                    taskWritten(id);
+                    notifyChange(uri);
+                }
+                return deleted;
+
+            // Reminders have no observers and don't affect cached Tasks
+            case REMINDERS:
+                return mDbHelper.getWritableDatabase().delete(DatabaseContract.TABLE_REMINDERS,
+                        (selection == null) ? "1" : selection, selectionArgs);
+
+            case REMINDERS_WITH_ID:
+                return mDbHelper.getWritableDatabase().delete(DatabaseContract.TABLE_REMINDERS,
+                        ReminderColumns.TASK_ID + " = ?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))});
 
                 // In the case of default...
             default:
@@ -262,39 +930,195 @@ public class TaskProvider extends ContentProvider {
         // Get a reference to the writable SQLiteDatabase
         SQLiteDatabase db = mDbHelper.getWritableDatabase();
 
-        // Delete the Task in the database using the passed filters,
+        // Delete the Tasks in the database using the passed filters,
         // returning the number of rows deleted, if any.
         int count = db.delete(DatabaseContract.TABLE_TASKS, selection, selectionArgs);
 
         // If there were row(s) deleted...
         if (count > 0) {
 
+            // Drop everything cached, the deleted rows are unknown
+            taskWritten(-1);
+
             // Notify observers of the change
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         // Return the number of rows deleted
         return count;
     }
 
+    /*
+     * Build the "rows after the last seen row" predicate for a keyset paged query.
+     * Returns the selection followed by its arguments, or null if the Uri carries no keyset.
+     *
+     * The expanded form is used because row value comparisons need SQLite 3.15.
+     * The leading is_complete range lets SQLite seek into the sort index, and the
+     * remaining terms only touch indexed columns, so no table rows are read for them.
+     */
+    private static String[] buildKeysetSelection(Uri uri, String sortOrder) {
+        String afterId = uri.getQueryParameter(DatabaseContract.PARAM_AFTER_ID);
+        if (afterId == null) {
+            return null;
+        }
+
+        String complete = uri.getQueryParameter(DatabaseContract.PARAM_AFTER_COMPLETE);
+        String priority = uri.getQueryParameter(DatabaseContract.PARAM_AFTER_PRIORITY);
+        //Absent when the last row has no due date
+        String due = uri.getQueryParameter(DatabaseContract.PARAM_AFTER_DUE);
+        if (complete == null || priority == null) {
+            throw new IllegalArgumentException("Incomplete keyset in URI: " + uri);
+        }
+
+        /*
+         * NULL due dates sort last in their group. After a dated row they all
+         * follow it, after an undated row only undated rows can follow it.
+         */
+        if (DatabaseContract.DEFAULT_SORT.equals(sortOrder)) {
+            if (due == null) {
+                return new String[]{
+                        String.format("%1$s >= ? AND (%1$s > ? OR (%2$s < ? OR (%2$s = ? AND"
+                                        + " %3$s IS NULL AND %4$s > ?)))",
+                                TaskColumns.IS_COMPLETE, TaskColumns.IS_PRIORITY,
+                                TaskColumns.DUE_DATE, TaskColumns._ID),
+                        complete, complete, priority, priority, afterId};
+            }
+            return new String[]{
+                    String.format("%1$s >= ? AND (%1$s > ? OR (%2$s < ? OR (%2$s = ? AND"
+                                    + " (%3$s IS NULL OR %3$s > ? OR (%3$s = ? AND %4$s > ?)))))",
+                            TaskColumns.IS_COMPLETE, TaskColumns.IS_PRIORITY,
+                            TaskColumns.DUE_DATE, TaskColumns._ID),
+                    complete, complete, priority, priority, due, due, afterId};
+        } else if (DatabaseContract.DATE_SORT.equals(sortOrder)) {
+            if (due == null) {
+                return new String[]{
+                        String.format("%1$s >= ? AND (%1$s > ? OR (%2$s IS NULL AND"
+                                        + " (%3$s < ? OR (%3$s = ? AND %4$s > ?))))",
+                                TaskColumns.IS_COMPLETE, TaskColumns.DUE_DATE,
+                                TaskColumns.IS_PRIORITY, TaskColumns._ID),
+                        complete, complete, priority, priority, afterId};
+            }
+            return new String[]{
+                    String.format("%1$s >= ? AND (%1$s > ? OR (%2$s IS NULL OR %2$s > ? OR"
+                                    + " (%2$s = ? AND (%3$s < ? OR (%3$s = ? AND %4$s > ?)))))",
+                            TaskColumns.IS_COMPLETE, TaskColumns.DUE_DATE,
+                            TaskColumns.IS_PRIORITY, TaskColumns._ID),
+                    complete, complete, due, due, priority, priority, afterId};
+        }
+
+        throw new IllegalArgumentException("Keyset paging requires DEFAULT_SORT or DATE_SORT");
+    }
+
+    /*
+     * Query one of the filtered task lists. The caller's selection narrows the
+     * filter further, and the defaults apply when no projection or order is given.
+     */
+    private static Cursor queryFiltered(SQLiteDatabase db, Uri uri, String[] projection,
+                                        String selection, String[] selectionArgs,
+                                        String sortOrder, String filter, String[] filterArgs,
+                                        String[] defaultProjection, String defaultSort) {
+        return db.query(
+                DatabaseContract.TABLE_TASKS,
+                (projection != null) ? projection : defaultProjection,
+                appendSelection(selection, filter),
+                (filterArgs != null) ? appendSelectionArgs(selectionArgs, filterArgs) : selectionArgs,
+                null,
+                null,
+                (sortOrder != null) ? sortOrder : defaultSort,
+                uri.getQueryParameter(DatabaseContract.PARAM_LIMIT)
+        );
+    }
+
+    /*
+     * Turn free text into an FTS query matching every word as a prefix, so the
+     * results narrow while the user types. Returns null if there are no words.
+     * Visible for the search benchmark.
+     */
+    /*package*/ static String buildMatchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder(text.length() + 8);
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(text, start, i).append('*');
+                start = -1;
+            }
+        }
+
+        return (match.length() > 0) ? match.toString() : null;
+    }
+
+    private static String getRequiredParameter(Uri uri, String name) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name + " in " + uri);
+        }
+        return value;
+    }
+
+    private static String appendSelection(String selection, String extra) {
+        return (selection == null) ? extra : "(" + selection + ") AND (" + extra + ")";
+    }
+
+    private static String[] appendSelectionArgs(String[] selectionArgs, String[] extra) {
+        if (selectionArgs == null) {
+            return extra;
+        }
+        String[] result = Arrays.copyOf(selectionArgs, selectionArgs.length + extra.length);
+        System.arraycopy(extra, 0, result, selectionArgs.length, extra.length);
+        return result;
+    }
+
     /* Initiate a periodic job to clear out completed items */
     private void manageCleanupJob() {
-        Log.d(TAG, "Scheduling cleanup job");
         JobScheduler jobScheduler = (JobScheduler) getContext()
                 .getSystemService(Context.JOB_SCHEDULER_SERVICE);
 
+        //The job is persisted, so it usually survives from a previous run
+        if (isJobPending(jobScheduler, CLEANUP_JOB_ID)) {
+            return;
+        }
+
+        Log.d(TAG, "Scheduling cleanup job");
+
         //Run the job approximately every hour
         // Set the jobInterval variable to be 1 hour
         long jobInterval = 3600000L;
 
         ComponentName jobService = new ComponentName(getContext(), CleanupJobService.class);
+        PersistableBundle extras = new PersistableBundle();
+        extras.putInt(CleanupJobService.EXTRA_BATCH_SIZE, CleanupJobService.DEFAULT_BATCH_SIZE);
         JobInfo task = new JobInfo.Builder(CLEANUP_JOB_ID, jobService)
                 .setPeriodic(jobInterval)
                 .setPersisted(true)
+                .setExtras(extras)
                 .build();
 
         if (jobScheduler.schedule(task) != JobScheduler.RESULT_SUCCESS) {
             Log.w(TAG, "Unable to schedule cleanup job");
         }
     }
+
+    private static boolean isJobPending(JobScheduler jobScheduler, int jobId) {
+        //Looks up the one job instead of copying every pending job of the app
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return jobScheduler.getPendingJob(jobId) != null;
+        }
+
+        for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+            if (pending.getId() == jobId) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
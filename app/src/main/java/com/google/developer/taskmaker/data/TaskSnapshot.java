@@ -0,0 +1,210 @@
+package com.google.developer.taskmaker.data;
+
+import android.database.Cursor;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Immutable copy of a range of task rows, stored as parallel primitive arrays
+ * so reading a row during list binding does not allocate.
+ */
+public final class TaskSnapshot {
+
+    /* Bits of the packed flags array */
+    public static final int FLAG_COMPLETE = 1;
+    public static final int FLAG_PRIORITY = 1 << 1;
+
+    public static final TaskSnapshot EMPTY = new TaskSnapshot(0);
+
+    private final long[] mIds;
+    private final long[] mDueDates;
+    private final byte[] mFlags;
+    private final String[] mDescriptions;
+    //Hash of the displayed attributes, used to detect changed rows
+    private final int[] mHashes;
+    private final int mCount;
+
+    private TaskSnapshot(int count) {
+        mIds = new long[count];
+        mDueDates = new long[count];
+        mFlags = new byte[count];
+        mDescriptions = new String[count];
+        mHashes = new int[count];
+        mCount = count;
+    }
+
+    /**
+     * Copy every row of a task cursor. Column indices are resolved once for the
+     * whole cursor rather than once per row.
+     *
+     * @param cursor Cursor over the tasks table, may be null.
+     */
+    public static TaskSnapshot fromCursor(Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return EMPTY;
+        }
+
+        int idIndex = cursor.getColumnIndexOrThrow(TaskColumns._ID);
+        int descriptionIndex = cursor.getColumnIndexOrThrow(TaskColumns.DESCRIPTION);
+        int completeIndex = cursor.getColumnIndexOrThrow(TaskColumns.IS_COMPLETE);
+        int priorityIndex = cursor.getColumnIndexOrThrow(TaskColumns.IS_PRIORITY);
+        int dueDateIndex = cursor.getColumnIndexOrThrow(TaskColumns.DUE_DATE);
+
+        TaskSnapshot snapshot = new TaskSnapshot(cursor.getCount());
+        int i = 0;
+        do {
+            int flags = 0;
+            if (cursor.getInt(completeIndex) == 1) {
+                flags |= FLAG_COMPLETE;
+            }
+            if (cursor.getInt(priorityIndex) == 1) {
+                flags |= FLAG_PRIORITY;
+            }
+
+            snapshot.mIds[i] = cursor.getLong(idIndex);
+            snapshot.mDueDates[i] = cursor.isNull(dueDateIndex)
+                    ? Task.NO_DATE : cursor.getLong(dueDateIndex);
+            snapshot.mFlags[i] = (byte) flags;
+            snapshot.mDescriptions[i] = cursor.getString(descriptionIndex);
+            snapshot.mHashes[i] = Task.contentHash(snapshot.mDescriptions[i],
+                    (flags & FLAG_COMPLETE) != 0,
+                    (flags & FLAG_PRIORITY) != 0,
+                    snapshot.mDueDates[i]);
+            i++;
+        } while (cursor.moveToNext() && i < snapshot.mCount);
+
+        return snapshot;
+    }
+
+    /**
+     * Write up to {@code maxRows} leading rows in a compact binary form, readable
+     * with {@link #readFrom(DataInput, int)}. Content hashes are not written, they are
+     * recomputed on reading.
+     */
+    public void writeTo(DataOutput out, int maxRows) throws IOException {
+        int count = Math.min(mCount, maxRows);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(mIds[i]);
+            out.writeLong(mDueDates[i]);
+            out.writeByte(mFlags[i]);
+            out.writeUTF(mDescriptions[i] != null ? mDescriptions[i] : "");
+        }
+    }
+
+    /**
+     * Read rows written by {@link #writeTo(DataOutput, int)}.
+     *
+     * @param maxRows Most rows the input may hold, as it was written with. Checked
+     *                before anything is allocated, so a corrupt count can't exhaust memory.
+     * @throws IOException If the input ends early or holds an invalid row count.
+     */
+    public static TaskSnapshot readFrom(DataInput in, int maxRows) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > maxRows) {
+            throw new IOException("Invalid row count " + count);
+        } else if (count == 0) {
+            return EMPTY;
+        }
+
+        TaskSnapshot snapshot = new TaskSnapshot(count);
+        for (int i = 0; i < count; i++) {
+            snapshot.mIds[i] = in.readLong();
+            snapshot.mDueDates[i] = in.readLong();
+            snapshot.mFlags[i] = in.readByte();
+            snapshot.mDescriptions[i] = in.readUTF();
+            snapshot.mHashes[i] = Task.contentHash(snapshot.mDescriptions[i],
+                    snapshot.isComplete(i),
+                    snapshot.isPriority(i),
+                    snapshot.mDueDates[i]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Return a new snapshot holding the rows of this one followed by the rows of another.
+     */
+    public TaskSnapshot append(TaskSnapshot other) {
+        if (other.mCount == 0) {
+            return this;
+        } else if (mCount == 0) {
+            return other;
+        }
+
+        TaskSnapshot result = new TaskSnapshot(mCount + other.mCount);
+        copyInto(this, result, 0);
+        copyInto(other, result, mCount);
+        return result;
+    }
+
+    private static void copyInto(TaskSnapshot source, TaskSnapshot target, int offset) {
+        System.arraycopy(source.mIds, 0, target.mIds, offset, source.mCount);
+        System.arraycopy(source.mDueDates, 0, target.mDueDates, offset, source.mCount);
+        System.arraycopy(source.mFlags, 0, target.mFlags, offset, source.mCount);
+        System.arraycopy(source.mDescriptions, 0, target.mDescriptions, offset, source.mCount);
+        System.arraycopy(source.mHashes, 0, target.mHashes, offset, source.mCount);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public long getDueDate(int position) {
+        return mDueDates[position];
+    }
+
+    public boolean hasDueDate(int position) {
+        return mDueDates[position] != Task.NO_DATE;
+    }
+
+    public boolean isComplete(int position) {
+        return (mFlags[position] & FLAG_COMPLETE) != 0;
+    }
+
+    public boolean isPriority(int position) {
+        return (mFlags[position] & FLAG_PRIORITY) != 0;
+    }
+
+    public String getDescription(int position) {
+        return mDescriptions[position];
+    }
+
+    public int getContentHash(int position) {
+        return mHashes[position];
+    }
+
+    /**
+     * Return true if the row at the given position renders identically to a row
+     * of another snapshot.
+     */
+    public boolean contentEquals(int position, TaskSnapshot other, int otherPosition) {
+        return mHashes[position] == other.mHashes[otherPosition]
+                && mFlags[position] == other.mFlags[otherPosition]
+                && mDueDates[position] == other.mDueDates[otherPosition]
+                && equals(mDescriptions[position], other.mDescriptions[otherPosition]);
+    }
+
+    private static boolean equals(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    /**
+     * Build a {@link Task} model object for the row at the given position.
+     */
+    public Task getTask(int position) {
+        Task task = new Task(mDescriptions[position],
+                isComplete(position),
+                isPriority(position),
+                mDueDates[position]);
+        task.id = mIds[position];
+        return task;
+    }
+}
@@ -0,0 +1,115 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the first screen of the task list in a small file, so a cold launch can
+ * show it before the database is opened. The file records the sort order it was
+ * taken in and is ignored once that order no longer applies. Rows shown from it
+ * may be stale, the live query replaces them as soon as it completes.
+ */
+public class TaskSnapshotStore {
+    private static final String TAG = TaskSnapshotStore.class.getSimpleName();
+
+    //Rows kept, enough to fill the screen of a large phone
+    public static final int FIRST_SCREEN_ROWS = 20;
+
+    //Orders the writes of the file on the DataExecutor
+    public static final Object WRITE_KEY = TaskSnapshotStore.class;
+
+    private static final String FILE_NAME = "first_screen.snapshot";
+    private static final int MAGIC = 0x54534e50;
+    //Bump when the layout of the file changes, older files are then ignored
+    private static final int VERSION = 1;
+
+    /**
+     * Read the saved first screen. This is a single small read, cheap enough to
+     * make while the first frame is being built.
+     *
+     * @param sortOrder Sort order the list is about to be shown in.
+     *
+     * @return The saved rows, or null if there are none for this sort order.
+     */
+    public static TaskSnapshot read(Context context, String sortOrder) {
+        AtomicFile file = getFile(context);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(String.valueOf(sortOrder))) {
+                return null;
+            }
+            return TaskSnapshot.readFrom(in, FIRST_SCREEN_ROWS);
+        } catch (FileNotFoundException e) {
+            //Nothing saved yet
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable snapshot", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replace the saved first screen with the leading rows of a snapshot. Call
+     * from the DataExecutor write lane under {@link #WRITE_KEY}.
+     *
+     * @param sortOrder Sort order the rows are in.
+     */
+    public static void write(Context context, String sortOrder, TaskSnapshot snapshot) {
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(String.valueOf(sortOrder));
+            snapshot.writeTo(out, FIRST_SCREEN_ROWS);
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save snapshot", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Delete the saved first screen.
+     */
+    public static void clear(Context context) {
+        getFile(context).delete();
+    }
+
+    private static AtomicFile getFile(Context context) {
+        //Derived from the database, so it isn't backed up
+        return new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME));
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            //Nothing left to read
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.google.developer.taskmaker.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+/**
+ * Compiled statements for the single task writes made most often: toggling
+ * completion, changing the due date and deleting by id. Each statement is
+ * compiled once and reused, skipping the SQL building of the generic paths.
+ *
+ * Bindings live in the statement object, so each statement is used by one
+ * thread at a time. Its lock is only taken once the thread holds the writer
+ * connection, inside a transaction (nested in a batch's own), so a thread
+ * waiting on the lock never holds the connection its owner needs.
+ */
+class TaskStatements {
+
+    private static final String SQL_UPDATE_COMPLETE = String.format(
+            "UPDATE %s SET %s = ? WHERE %s = ?",
+            DatabaseContract.TABLE_TASKS, TaskColumns.IS_COMPLETE, TaskColumns._ID);
+
+    private static final String SQL_UPDATE_DUE_DATE = String.format(
+            "UPDATE %s SET %s = ? WHERE %s = ?",
+            DatabaseContract.TABLE_TASKS, TaskColumns.DUE_DATE, TaskColumns._ID);
+
+    private static final String SQL_DELETE = String.format(
+            "DELETE FROM %s WHERE %s = ?",
+            DatabaseContract.TABLE_TASKS, TaskColumns._ID);
+
+    private final SQLiteOpenHelper mDbHelper;
+
+    //Compiled on first use, once the database is open
+    private SQLiteStatement mUpdateComplete;
+    private SQLiteStatement mUpdateDueDate;
+    private SQLiteStatement mDelete;
+
+    TaskStatements(SQLiteOpenHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Set the completed marker of a task, returning the number of rows changed.
+     */
+    int updateComplete(long id, boolean isComplete) {
+        return execute(getUpdateComplete(), isComplete ? 1L : 0L, id);
+    }
+
+    /**
+     * Set or clear the due date of a task, returning the number of rows changed.
+     *
+     * @param dueDate Due date in milliseconds, or null for none.
+     */
+    int updateDueDate(long id, Long dueDate) {
+        return execute(getUpdateDueDate(), dueDate, id);
+    }
+
+    /**
+     * Delete a task, returning the number of rows deleted.
+     */
+    int delete(long id) {
+        return execute(getDelete(), id);
+    }
+
+    /* Bind the arguments, null ones as NULL, and run the statement */
+    private int execute(SQLiteStatement statement, Long... args) {
+        SQLiteDatabase db = getDatabase();
+        //Takes the writer connection before the lock, never the other way around
+        db.beginTransactionNonExclusive();
+        try {
+            int count;
+            synchronized (statement) {
+                for (int i = 0; i < args.length; i++) {
+                    if (args[i] != null) {
+                        statement.bindLong(i + 1, args[i]);
+                    } else {
+                        statement.bindNull(i + 1);
+                    }
+                }
+                count = statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private synchronized SQLiteStatement getUpdateComplete() {
+        if (mUpdateComplete == null) {
+            mUpdateComplete = getDatabase().compileStatement(SQL_UPDATE_COMPLETE);
+        }
+        return mUpdateComplete;
+    }
+
+    private synchronized SQLiteStatement getUpdateDueDate() {
+        if (mUpdateDueDate == null) {
+            mUpdateDueDate = getDatabase().compileStatement(SQL_UPDATE_DUE_DATE);
+        }
+        return mUpdateDueDate;
+    }
+
+    private synchronized SQLiteStatement getDelete() {
+        if (mDelete == null) {
+            mDelete = getDatabase().compileStatement(SQL_DELETE);
+        }
+        return mDelete;
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return mDbHelper.getWritableDatabase();
+    }
+}
@@ -0,0 +1,122 @@
+package com.google.developer.taskmaker.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.developer.taskmaker.data.DatabaseContract.StatsColumns;
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import java.util.Calendar;
+
+/**
+ * Task counts for the stats route, computed in a single pass. Every column the
+ * counts look at is part of the default sort index, so the pass reads the index
+ * only. The last result is kept until the next write, or until the minute it was
+ * computed for has passed, since overdue and due today depend on the time.
+ */
+class TaskStats {
+
+    static final String[] COLUMNS = {
+            StatsColumns.TOTAL,
+            StatsColumns.ACTIVE,
+            StatsColumns.OVERDUE,
+            StatsColumns.PRIORITY,
+            StatsColumns.COMPLETE,
+            StatsColumns.DUE_TODAY
+    };
+
+    //Arguments: now, start of today, start of tomorrow
+    private static final String SQL_STATS = String.format("SELECT COUNT(*),"
+                    + " COUNT(CASE WHEN %1$s = 0 THEN 1 END),"
+                    + " COUNT(CASE WHEN %1$s = 0 AND %3$s < ?1 THEN 1 END),"
+                    + " COUNT(CASE WHEN %1$s = 0 AND %2$s = 1 THEN 1 END),"
+                    + " COUNT(CASE WHEN %1$s = 1 THEN 1 END),"
+                    + " COUNT(CASE WHEN %1$s = 0 AND %3$s >= ?2 AND %3$s < ?3 THEN 1 END)"
+                    + " FROM %4$s",
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE,
+            DatabaseContract.TABLE_TASKS);
+
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+
+    //Bumped on every committed write, results read before that are stale
+    private long mVersion;
+    private long mCachedVersion = -1;
+    private long mCachedMinute;
+    private long[] mCachedCounts;
+
+    /**
+     * Drop the cached counts. Call after a write has been committed.
+     */
+    synchronized void invalidate() {
+        mVersion++;
+        mCachedCounts = null;
+    }
+
+    /**
+     * Return the counts as of {@code now} in a single row cursor.
+     */
+    Cursor query(SQLiteDatabase db, long now) {
+        long minute = now / MINUTE_MILLIS;
+        long version;
+        synchronized (this) {
+            if (mCachedCounts != null && mCachedVersion == mVersion && mCachedMinute == minute) {
+                return toCursor(mCachedCounts);
+            }
+            version = mVersion;
+        }
+
+        long[] counts = count(db, now);
+
+        synchronized (this) {
+            //Only keep the result if no write was committed while counting
+            if (version == mVersion) {
+                mCachedVersion = version;
+                mCachedMinute = minute;
+                mCachedCounts = counts;
+            }
+        }
+        return toCursor(counts);
+    }
+
+    private static long[] count(SQLiteDatabase db, long now) {
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(now);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        long startOfDay = day.getTimeInMillis();
+        day.add(Calendar.DAY_OF_MONTH, 1);
+        long startOfNextDay = day.getTimeInMillis();
+
+        Cursor cursor = db.rawQuery(SQL_STATS, new String[]{
+                String.valueOf(now),
+                String.valueOf(startOfDay),
+                String.valueOf(startOfNextDay)});
+        try {
+            long[] counts = new long[COLUMNS.length];
+            if (cursor.moveToFirst()) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = cursor.getLong(i);
+                }
+            }
+            return counts;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Cursor toCursor(long[] counts) {
+        Object[] row = new Object[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            row[i] = counts[i];
+        }
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+}
@@ -1,25 +1,53 @@
 package com.google.developer.taskmaker.data;
 
-import android.app.AlarmManager;
-import android.app.IntentService;
-import android.app.PendingIntent;
+import android.app.Service;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Parcelable;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.google.developer.taskmaker.reminders.ReminderAlarmService;
+import com.google.developer.taskmaker.R;
+import com.google.developer.taskmaker.reminders.AlarmScheduler;
 
-/* Process DB actions on a background thread */
-public class TaskUpdateService extends IntentService {
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Process DB actions on the write lane of the DataExecutor.
+ * Single task writes are queued and collapsed per task, then flushed together
+ * once the latency budget has passed, as one transaction. Every write of the
+ * service uses the same key, so flushes and batches commit in the order the
+ * requests arrived. The service stays started until every queued write and
+ * batch has been committed.
+ */
+public class TaskUpdateService extends Service {
     private static final String TAG = TaskUpdateService.class.getSimpleName();
     //Intent actions
     public static final String ACTION_INSERT = TAG + ".INSERT";
     public static final String ACTION_UPDATE = TAG + ".UPDATE";
     public static final String ACTION_DELETE = TAG + ".DELETE";
+    public static final String ACTION_BULK_INSERT = TAG + ".BULK_INSERT";
+    public static final String ACTION_BATCH = TAG + ".BATCH";
 
     public static final String EXTRA_VALUES = TAG + ".ContentValues";
+    public static final String EXTRA_OPERATIONS = TAG + ".Operations";
+    //Tasks removed by a batch, whose reminders must be cancelled
+    public static final String EXTRA_DELETED_URIS = TAG + ".DeletedUris";
+
+    //Orders the writes of this service on the DataExecutor
+    public static final Object WRITE_KEY = TaskUpdateService.class;
 
     public static void insertNewTask(Context context, ContentValues values) {
         Intent intent = new Intent(context, TaskUpdateService.class);
@@ -43,45 +71,238 @@ public class TaskUpdateService extends IntentService {
         context.startService(intent);
     }
 
-    public TaskUpdateService() {
-        super(TAG);
+    /**
+     * Insert many tasks as one transaction.
+     */
+    public static void insertNewTasks(Context context, ContentValues[] values) {
+        Intent intent = new Intent(context, TaskUpdateService.class);
+        intent.setAction(ACTION_BULK_INSERT);
+        intent.putExtra(EXTRA_VALUES, values);
+        context.startService(intent);
+    }
+
+    /**
+     * Apply the same values to many tasks as one transaction.
+     */
+    public static void updateTasks(Context context, List<Uri> uris, ContentValues values) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValues(values)
+                    .build());
+        }
+        applyBatch(context, operations, null);
+    }
+
+    /**
+     * Delete many tasks, and cancel their reminders, as one transaction.
+     */
+    public static void deleteTasks(Context context, List<Uri> uris) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            operations.add(ContentProviderOperation.newDelete(uri).build());
+        }
+        applyBatch(context, operations, new ArrayList<>(uris));
+    }
+
+    /**
+     * Commit an arbitrary list of provider operations as one transaction.
+     *
+     * @param deletedUris Tasks removed by the operations whose reminders should
+     *                    be cancelled, or null if none are deleted.
+     */
+    public static void applyBatch(Context context, ArrayList<ContentProviderOperation> operations,
+                                  ArrayList<Uri> deletedUris) {
+        Intent intent = new Intent(context, TaskUpdateService.class);
+        intent.setAction(ACTION_BATCH);
+        intent.putParcelableArrayListExtra(EXTRA_OPERATIONS, operations);
+        if (deletedUris != null) {
+            intent.putParcelableArrayListExtra(EXTRA_DELETED_URIS, deletedUris);
+        }
+        context.startService(intent);
+    }
+
+    private final TaskWriteQueue mQueue = new TaskWriteQueue();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    //Batches handed to the executor that have not run yet
+    private final AtomicInteger mPendingBatches = new AtomicInteger();
+
+    private DataExecutor mExecutor;
+    //Times the latency budget, flushes are then handed to the executor
+    private Handler mTimer;
+    //Longest time a queued write may wait before it is committed
+    private long mLatencyBudget;
+    //Set once a start request's writes are queued, so stopping on it never drops them
+    private volatile int mLastStartId;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled.set(false);
+            try {
+                flushPendingWrites();
+            } finally {
+                stopIfIdle();
+            }
+        }
+    };
+
+    private final Runnable mSubmitFlush = new Runnable() {
+        @Override
+        public void run() {
+            mExecutor.write(WRITE_KEY, mFlush);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mLatencyBudget = getResources().getInteger(R.integer.write_latency_budget_ms);
+
+        mExecutor = DataExecutor.getInstance();
+        mTimer = new Handler(Looper.getMainLooper());
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
+    public int onStartCommand(final Intent intent, int flags, int startId) {
+        if (intent == null) {
+            mLastStartId = startId;
+            return START_REDELIVER_INTENT;
+        }
+
         if (ACTION_INSERT.equals(intent.getAction())) {
             ContentValues values = intent.getParcelableExtra(EXTRA_VALUES);
-            performInsert(values);
+            mQueue.insert(values);
+            scheduleFlush();
         } else if (ACTION_UPDATE.equals(intent.getAction())) {
             ContentValues values = intent.getParcelableExtra(EXTRA_VALUES);
-            performUpdate(intent.getData(), values);
+            mQueue.update(intent.getData(), values);
+            scheduleFlush();
         } else if (ACTION_DELETE.equals(intent.getAction())) {
-            performDelete(intent.getData());
+            mQueue.delete(intent.getData());
+            scheduleFlush();
+        } else {
+            //Explicit batches run right away, after anything already queued
+            mPendingBatches.incrementAndGet();
+            mExecutor.write(WRITE_KEY, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flushPendingWrites();
+                        handleBatchIntent(intent);
+                    } finally {
+                        mPendingBatches.decrementAndGet();
+                        stopIfIdle();
+                    }
+                }
+            });
         }
+        mLastStartId = startId;
+
+        //Queued writes are only in memory, have them redelivered if the process dies
+        return START_REDELIVER_INTENT;
     }
 
-    private void performInsert(ContentValues values) {
-        if (getContentResolver().insert(DatabaseContract.CONTENT_URI, values) != null) {
-            Log.d(TAG, "Inserted new task");
-        } else {
-            Log.w(TAG, "Error inserting new task");
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        //Only reached once idle, every queued write has been committed
+        mTimer.removeCallbacks(mSubmitFlush);
+        super.onDestroy();
+    }
+
+    private void scheduleFlush() {
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            mTimer.postDelayed(mSubmitFlush, mLatencyBudget);
+        }
+    }
+
+    private void stopIfIdle() {
+        //Read first, the writes of this request and all before it are queued by now
+        int startId = mLastStartId;
+        if (!mFlushScheduled.get() && mPendingBatches.get() == 0 && mQueue.isEmpty()) {
+            //Ignored by the system if a newer start request has arrived
+            stopSelf(startId);
         }
     }
 
-    private void performUpdate(Uri uri, ContentValues values) {
-        int count = getContentResolver().update(uri, values, null, null);
-        Log.d(TAG, "Updated " + count + " task items");
+    private void handleBatchIntent(Intent intent) {
+        if (ACTION_BULK_INSERT.equals(intent.getAction())) {
+            Parcelable[] parcels = intent.getParcelableArrayExtra(EXTRA_VALUES);
+            ContentValues[] values = new ContentValues[parcels.length];
+            System.arraycopy(parcels, 0, values, 0, parcels.length);
+            performBulkInsert(values);
+        } else if (ACTION_BATCH.equals(intent.getAction())) {
+            ArrayList<ContentProviderOperation> operations =
+                    intent.getParcelableArrayListExtra(EXTRA_OPERATIONS);
+            ArrayList<Uri> deletedUris = intent.getParcelableArrayListExtra(EXTRA_DELETED_URIS);
+            performBatch(operations, deletedUris);
+        }
     }
 
-    private void performDelete(Uri uri) {
-        int count = getContentResolver().delete(uri, null, null);
+    /* Commit every queued write as one batch, runs on the write lane */
+    private void flushPendingWrites() {
+        if (mQueue.isEmpty()) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        ArrayList<Uri> deletedUris = new ArrayList<>();
+        ArrayList<ContentProviderOperation> operations = mQueue.drain(deletedUris);
+        performBatch(operations, deletedUris);
 
-        //Cancel any reminders that might be set for this item
-        PendingIntent operation =
-                ReminderAlarmService.getReminderPendingIntent(this, uri);
-        AlarmManager manager = (AlarmManager) getSystemService(ALARM_SERVICE);
-        manager.cancel(operation);
+        Log.d(TAG, "Flushed " + operations.size() + " writes ("
+                + mQueue.getCollapsedCount() + " collapsed so far) in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    private void performBulkInsert(ContentValues[] values) {
+        try {
+            int count = getContentResolver().bulkInsert(DatabaseContract.CONTENT_URI, values);
+            Log.d(TAG, "Inserted " + count + " new tasks");
+        } catch (RuntimeException e) {
+            //Constraint and disk errors surface as SQLiteException
+            Log.w(TAG, "Error inserting tasks", e);
+        }
+    }
 
-        Log.d(TAG, "Deleted "+count+" tasks");
+    private void performBatch(ArrayList<ContentProviderOperation> operations,
+                              ArrayList<Uri> deletedUris) {
+        try {
+            ContentProviderResult[] results = getContentResolver()
+                    .applyBatch(DatabaseContract.CONTENT_AUTHORITY, operations);
+            Log.d(TAG, "Applied batch of " + results.length + " operations");
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            //The transaction was rolled back, keep every write but the failing ones
+            Log.w(TAG, "Error applying batch, applying its operations one by one", e);
+            performEach(operations);
+        }
+
+        //Reminders of deleted tasks went with them, re-arm for whatever is left
+        if (deletedUris != null && !deletedUris.isEmpty()) {
+            AlarmScheduler.armNextAlarm(this);
+        }
+    }
+
+    /* Apply each operation in its own transaction, skipping those that fail */
+    private void performEach(ArrayList<ContentProviderOperation> operations) {
+        ArrayList<ContentProviderOperation> single = new ArrayList<>(1);
+        int failed = 0;
+        for (ContentProviderOperation operation : operations) {
+            single.clear();
+            single.add(operation);
+            try {
+                getContentResolver().applyBatch(DatabaseContract.CONTENT_AUTHORITY, single);
+            } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+                failed++;
+                Log.w(TAG, "Dropping failed operation " + operation, e);
+            }
+        }
+        Log.d(TAG, "Applied " + (operations.size() - failed) + " of "
+                + operations.size() + " operations one by one");
     }
 }
@@ -0,0 +1,164 @@
+package com.google.developer.taskmaker.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-behind queue of task changes. Pending writes to the same task are
+ * collapsed before they reach the provider:
+ *  - update + update: values merged, last write wins per column
+ *  - update + delete: only the delete remains
+ *  - delete + update: the update is dropped
+ *  - insert + update: values merged into the insert
+ *  - insert + delete: both cancel out
+ *  - delete + insert: the delete still runs, followed by the insert
+ *
+ * Inserts only have a task Uri when their values carry an explicit _ID;
+ * other inserts are queued as they come.
+ */
+class TaskWriteQueue {
+
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+    //Delete of the existing row, then insert of the values
+    private static final int REPLACE = 3;
+
+    private static class PendingWrite {
+        int type;
+        ContentValues values;
+
+        PendingWrite(int type, ContentValues values) {
+            this.type = type;
+            this.values = values;
+        }
+    }
+
+    //Writes addressed to a specific task, in first-seen order
+    private final Map<Uri, PendingWrite> mWrites = new LinkedHashMap<>();
+    //Inserts with no known task Uri yet
+    private final List<ContentValues> mInserts = new ArrayList<>();
+
+    private int mCollapsed;
+
+    public synchronized void insert(ContentValues values) {
+        if (!values.containsKey(TaskColumns._ID)) {
+            mInserts.add(new ContentValues(values));
+            return;
+        }
+
+        Uri uri = ContentUris.withAppendedId(DatabaseContract.CONTENT_URI,
+                values.getAsLong(TaskColumns._ID));
+        PendingWrite pending = mWrites.get(uri);
+        if (pending != null && pending.type == DELETE) {
+            //The old row is still in the database, it must go before the insert
+            mCollapsed++;
+            pending.type = REPLACE;
+            pending.values = new ContentValues(values);
+            return;
+        }
+
+        mWrites.put(uri, new PendingWrite(INSERT, new ContentValues(values)));
+    }
+
+    public synchronized void update(Uri uri, ContentValues values) {
+        PendingWrite pending = mWrites.get(uri);
+        if (pending == null) {
+            mWrites.put(uri, new PendingWrite(UPDATE, new ContentValues(values)));
+            return;
+        }
+
+        mCollapsed++;
+        if (pending.type != DELETE) {
+            pending.values.putAll(values);
+        }
+    }
+
+    public synchronized void delete(Uri uri) {
+        PendingWrite pending = mWrites.get(uri);
+        if (pending == null) {
+            mWrites.put(uri, new PendingWrite(DELETE, null));
+            return;
+        }
+
+        mCollapsed++;
+        if (pending.type == INSERT) {
+            //The row never reached the database
+            mWrites.remove(uri);
+        } else {
+            pending.type = DELETE;
+            pending.values = null;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return mWrites.isEmpty() && mInserts.isEmpty();
+    }
+
+    /**
+     * Number of writes absorbed by an earlier pending write so far.
+     */
+    public synchronized int getCollapsedCount() {
+        return mCollapsed;
+    }
+
+    /**
+     * Remove every pending write from the queue.
+     *
+     * @param deletedUris Receives the Uri of each deleted task.
+     * @return Provider operations to apply as a single batch.
+     */
+    public synchronized ArrayList<ContentProviderOperation> drain(List<Uri> deletedUris) {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<>(mInserts.size() + mWrites.size());
+
+        for (ContentValues values : mInserts) {
+            operations.add(ContentProviderOperation.newInsert(DatabaseContract.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        mInserts.clear();
+
+        Iterator<Map.Entry<Uri, PendingWrite>> iterator = mWrites.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Uri, PendingWrite> entry = iterator.next();
+            PendingWrite pending = entry.getValue();
+            switch (pending.type) {
+                case INSERT:
+                    operations.add(ContentProviderOperation.newInsert(DatabaseContract.CONTENT_URI)
+                            .withValues(pending.values)
+                            .build());
+                    break;
+                case UPDATE:
+                    operations.add(ContentProviderOperation.newUpdate(entry.getKey())
+                            .withValues(pending.values)
+                            .build());
+                    break;
+                case DELETE:
+                    operations.add(ContentProviderOperation.newDelete(entry.getKey()).build());
+                    deletedUris.add(entry.getKey());
+                    break;
+                case REPLACE:
+                    operations.add(ContentProviderOperation.newDelete(entry.getKey()).build());
+                    operations.add(ContentProviderOperation.newInsert(DatabaseContract.CONTENT_URI)
+                            .withValues(pending.values)
+                            .build());
+                    deletedUris.add(entry.getKey());
+                    break;
+            }
+            iterator.remove();
+        }
+
+        return operations;
+    }
+}
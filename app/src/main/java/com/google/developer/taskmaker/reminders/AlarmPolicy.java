@@ -0,0 +1,83 @@
+package com.google.developer.taskmaker.reminders;
+
+/**
+ * Decides how reminder alarms are armed. Priority reminders get an exact alarm,
+ * all others a windowed alarm the system may defer to batch it with other wakeups.
+ * When the exact alarm will already deliver the next regular reminder, no
+ * windowed alarm is armed at all.
+ */
+class AlarmPolicy {
+
+    static final int MODE_NONE = 0;
+    static final int MODE_EXACT = 1;
+    static final int MODE_WINDOWED = 2;
+
+    /* The alarms to keep armed for the current state of the queue */
+    static class Plan {
+        final long exactTime;
+        final long windowStart;
+        final long windowLength;
+
+        Plan(long exactTime, long windowStart, long windowLength) {
+            this.exactTime = exactTime;
+            this.windowStart = windowStart;
+            this.windowLength = windowLength;
+        }
+
+        boolean hasExactAlarm() {
+            return exactTime != ReminderQueue.NONE;
+        }
+
+        boolean hasWindowedAlarm() {
+            return windowStart != ReminderQueue.NONE;
+        }
+
+        /* Mode of the alarm that fires first */
+        int getFirstMode() {
+            if (!hasExactAlarm()) {
+                return hasWindowedAlarm() ? MODE_WINDOWED : MODE_NONE;
+            }
+            if (!hasWindowedAlarm()) {
+                return MODE_EXACT;
+            }
+            return (exactTime <= windowStart) ? MODE_EXACT : MODE_WINDOWED;
+        }
+
+        int getAlarmCount() {
+            return (hasExactAlarm() ? 1 : 0) + (hasWindowedAlarm() ? 1 : 0);
+        }
+    }
+
+    private final long mWindowMillis;
+    private final long mToleranceMillis;
+
+    /**
+     * @param windowMillis How long a regular reminder may be deferred.
+     * @param toleranceMillis How far ahead of the clock a delivery takes reminders.
+     */
+    AlarmPolicy(long windowMillis, long toleranceMillis) {
+        mWindowMillis = windowMillis;
+        mToleranceMillis = toleranceMillis;
+    }
+
+    /**
+     * Plan the alarms for the earliest pending reminders.
+     *
+     * @param nextPriority Fire time of the earliest priority reminder, or {@link ReminderQueue#NONE}.
+     * @param nextRegular Fire time of the earliest other reminder, or {@link ReminderQueue#NONE}.
+     */
+    Plan plan(long nextPriority, long nextRegular) {
+        if (nextRegular == ReminderQueue.NONE) {
+            return new Plan(nextPriority, ReminderQueue.NONE, 0);
+        }
+
+        //A delivery at the exact time also takes the regular reminder, within its window
+        if (nextPriority != ReminderQueue.NONE
+                && nextRegular <= nextPriority + mToleranceMillis
+                && nextRegular + mWindowMillis >= nextPriority) {
+            return new Plan(nextPriority, ReminderQueue.NONE, 0);
+        }
+
+        return new Plan(nextPriority, nextRegular, mWindowMillis);
+    }
+}
@@ -2,13 +2,31 @@ package com.google.developer.taskmaker.reminders;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
+import android.content.ContentUris;
 import android.content.Context;
+import android.content.res.Resources;
 import android.net.Uri;
+import android.util.Log;
+
+import com.google.developer.taskmaker.R;
+
+import java.util.TimeZone;
 
 /**
- * Helper to manage scheduling the reminder alarm
+ * Helper to manage scheduling the reminder alarm.
+ *
+ * Reminders are kept in a persisted queue ordered by fire time. An exact
+ * system alarm is armed for the earliest priority reminder, and a windowed
+ * alarm for the earliest of the others (see {@link AlarmPolicy}). When either
+ * fires, every due reminder is delivered and the alarms are re-armed.
+ * These methods access the database and should not run on the main thread;
+ * changes to the queue run on the DataExecutor write lane under {@link #WRITE_KEY}.
  */
 public class AlarmScheduler {
+    private static final String TAG = AlarmScheduler.class.getSimpleName();
+
+    //Orders every change to the reminder queue on the DataExecutor
+    public static final Object WRITE_KEY = AlarmScheduler.class;
 
     /**
      * Schedule a reminder alarm at the specified time for the given task.
@@ -18,12 +36,65 @@ public class AlarmScheduler {
      * @param reminderTask Uri referencing the task in the content provider
      */
     public static void scheduleAlarm(Context context, long alarmTime, Uri reminderTask) {
-        //Schedule the alarm. Will update an existing item for the same task.
+        //Will replace an existing reminder for the same task
+        ReminderQueue.enqueue(context, ContentUris.parseId(reminderTask), alarmTime);
+        armNextAlarm(context);
+    }
+
+    /**
+     * Cancel the pending reminder of a task, if it has one.
+     *
+     * @param context Local application or activity context
+     * @param reminderTask Uri referencing the task in the content provider
+     */
+    public static void cancelAlarm(Context context, Uri reminderTask) {
+        ReminderQueue.remove(context, ContentUris.parseId(reminderTask));
+        armNextAlarm(context);
+    }
+
+    /**
+     * Arm the system alarms for the earliest pending reminders, and cancel
+     * those no longer needed.
+     *
+     * @param context Local application or activity context
+     */
+    public static void armNextAlarm(Context context) {
         AlarmManager manager = AlarmManagerProvider.getAlarmManager(context);
+        AlarmPolicy.Plan plan = getPolicy(context).plan(
+                ReminderQueue.peekNextFireTime(context, true),
+                ReminderQueue.peekNextFireTime(context, false));
+
+        //The same operations are reused, so these replace the armed alarms
+        PendingIntent exact = ReminderAlarmService.getDeliveryPendingIntent(context);
+        if (plan.hasExactAlarm()) {
+            manager.setExact(AlarmManager.RTC, plan.exactTime, exact);
+        } else {
+            manager.cancel(exact);
+        }
+
+        PendingIntent windowed = ReminderAlarmService.getWindowedDeliveryPendingIntent(context);
+        if (plan.hasWindowedAlarm()) {
+            manager.setWindow(AlarmManager.RTC, plan.windowStart, plan.windowLength, windowed);
+        } else {
+            manager.cancel(windowed);
+        }
+    }
 
-        PendingIntent operation =
-                ReminderAlarmService.getReminderPendingIntent(context, reminderTask);
+    /**
+     * Restore the reminder alarms after a reboot or a change of the clock or
+     * time zone. Future reminders keep their local wall clock time.
+     *
+     * @param context Local application or activity context
+     */
+    public static void rebuildAlarms(Context context) {
+        int moved = ReminderQueue.retime(context, System.currentTimeMillis(), TimeZone.getDefault());
+        Log.d(TAG, "Rebuilding reminder alarms, " + moved + " reminders moved");
+        armNextAlarm(context);
+    }
 
-        manager.setExact(AlarmManager.RTC, alarmTime, operation);
+    private static AlarmPolicy getPolicy(Context context) {
+        Resources res = context.getResources();
+        return new AlarmPolicy(res.getInteger(R.integer.reminder_window_ms),
+                res.getInteger(R.integer.reminder_tolerance_ms));
     }
 }
@@ -1,70 +1,188 @@
 package com.google.developer.taskmaker.reminders;
 
-import android.app.IntentService;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.app.Service;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.IBinder;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
+import android.support.v4.util.LongSparseArray;
 
 import com.google.developer.taskmaker.MainActivity;
 import com.google.developer.taskmaker.R;
+import com.google.developer.taskmaker.data.DataExecutor;
 import com.google.developer.taskmaker.data.DatabaseContract;
 import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
 
-public class ReminderAlarmService extends IntentService {
+/*
+ * Delivers due reminders on the write lane of the DataExecutor, under the
+ * reminder write key so deliveries and alarm rebuilds never interleave.
+ */
+public class ReminderAlarmService extends Service {
     private static final String TAG = ReminderAlarmService.class.getSimpleName();
 
+    //Delivers every reminder that is due
+    public static final String ACTION_DELIVER_DUE = TAG + ".DELIVER_DUE";
+
+    private static final int DELIVERY_REQUEST_CODE = 0;
+    private static final int WINDOWED_DELIVERY_REQUEST_CODE = 1;
+
+    //Summary notification for reminders delivered together
     private static final int NOTIFICATION_ID = 42;
+    //Per-task notifications use the task id under this tag
+    private static final String NOTIFICATION_TAG_TASK = "task";
+    private static final String GROUP_REMINDERS = "reminders";
 
-    //This is a deep link intent, and needs the task stack
-    public static PendingIntent getReminderPendingIntent(Context context, Uri uri) {
+    //The exact alarm shared by all pending priority reminders
+    public static PendingIntent getDeliveryPendingIntent(Context context) {
+        return getDeliveryPendingIntent(context, DELIVERY_REQUEST_CODE);
+    }
+
+    //The windowed alarm shared by all other pending reminders
+    public static PendingIntent getWindowedDeliveryPendingIntent(Context context) {
+        return getDeliveryPendingIntent(context, WINDOWED_DELIVERY_REQUEST_CODE);
+    }
+
+    private static PendingIntent getDeliveryPendingIntent(Context context, int requestCode) {
         Intent action = new Intent(context, ReminderAlarmService.class);
-        action.setData(uri);
-        return PendingIntent.getService(context, 0, action, PendingIntent.FLAG_UPDATE_CURRENT);
+        action.setAction(ACTION_DELIVER_DUE);
+        return PendingIntent.getService(context, requestCode, action,
+                PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
-    public ReminderAlarmService() {
-        super(TAG);
+    @Override
+    public int onStartCommand(final Intent intent, int flags, final int startId) {
+        DataExecutor.getInstance().write(AlarmScheduler.WRITE_KEY, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (intent != null) {
+                        handleIntent(intent);
+                    }
+                } finally {
+                    //Ignored by the system if a newer start request has arrived
+                    stopSelf(startId);
+                }
+            }
+        });
+
+        //A missed delivery is picked up by the next alarm
+        return START_NOT_STICKY;
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
-        NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void handleIntent(Intent intent) {
         Uri uri = intent.getData();
+        if (uri != null) {
+            //Per-task alarm armed before the reminder queue existed
+            notifyTasks(new long[]{ContentUris.parseId(uri)});
+            return;
+        }
 
-        //Display a notification to view the task details
-        Intent action = new Intent(this, MainActivity.class);
-        action.setData(uri);
-        PendingIntent operation = TaskStackBuilder.create(this)
-                .addNextIntentWithParentStack(action)
-                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+        //Also take reminders due shortly, rather than waking up again for them
+        long tolerance = getResources().getInteger(R.integer.reminder_tolerance_ms);
+        long[] dueTaskIds = ReminderQueue.takeDue(this, System.currentTimeMillis() + tolerance);
+        if (dueTaskIds.length > 0) {
+            notifyTasks(dueTaskIds);
+        }
+        AlarmScheduler.armNextAlarm(this);
+    }
 
-        //Grab the task description
-        Cursor cursor = getContentResolver().query(uri, null, null, null, null);
-        String description = "";
-        try {
-            if (cursor != null && cursor.moveToFirst()) {
-                description = DatabaseContract.getColumnString(cursor, TaskColumns.DESCRIPTION);
+    /* Post one notification per task, grouped under a summary when there are several */
+    private void notifyTasks(long[] taskIds) {
+        NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        LongSparseArray<String> descriptions = queryDescriptions(taskIds);
+
+        for (long taskId : taskIds) {
+            String description = descriptions.get(taskId);
+            if (description == null) {
+                //Task was deleted after the reminder was set
+                continue;
             }
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+
+            Notification note = new NotificationCompat.Builder(this)
+                    .setContentTitle(getString(R.string.reminder_title))
+                    .setContentText(description)
+                    .setSmallIcon(R.drawable.ic_done)
+                    .setContentIntent(getTaskIntent(
+                            ContentUris.withAppendedId(DatabaseContract.CONTENT_URI, taskId)))
+                    .setGroup(GROUP_REMINDERS)
+                    .setAutoCancel(true)
+                    .build();
+
+            manager.notify(NOTIFICATION_TAG_TASK, (int) taskId, note);
+        }
+
+        if (descriptions.size() > 1) {
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (int i = 0; i < descriptions.size(); i++) {
+                style.addLine(descriptions.valueAt(i));
             }
+
+            String summary = getResources().getQuantityString(R.plurals.reminder_summary,
+                    descriptions.size(), descriptions.size());
+            Notification note = new NotificationCompat.Builder(this)
+                    .setContentTitle(getString(R.string.reminder_title))
+                    .setContentText(summary)
+                    .setSmallIcon(R.drawable.ic_done)
+                    .setStyle(style.setSummaryText(summary))
+                    .setContentIntent(getTaskIntent(DatabaseContract.CONTENT_URI))
+                    .setGroup(GROUP_REMINDERS)
+                    .setGroupSummary(true)
+                    .setAutoCancel(true)
+                    .build();
+
+            manager.notify(NOTIFICATION_ID, note);
         }
+    }
 
-        Notification note = new NotificationCompat.Builder(this)
-                .setContentTitle(getString(R.string.reminder_title))
-                .setContentText(description)
-                .setSmallIcon(R.drawable.ic_done)
-                .setContentIntent(operation)
-                .setAutoCancel(true)
-                .build();
+    /* Read the descriptions of all tasks with a single IN (...) query per chunk */
+    private LongSparseArray<String> queryDescriptions(long[] taskIds) {
+        LongSparseArray<String> descriptions = new LongSparseArray<>(taskIds.length);
+        String[] projection = {TaskColumns._ID, TaskColumns.DESCRIPTION};
+
+        for (int start = 0; start < taskIds.length; start += ReminderQueue.MAX_IDS_PER_STATEMENT) {
+            int end = Math.min(taskIds.length, start + ReminderQueue.MAX_IDS_PER_STATEMENT);
+            String[] args = new String[end - start];
+            for (int i = start; i < end; i++) {
+                args[i - start] = String.valueOf(taskIds[i]);
+            }
 
-        manager.notify(NOTIFICATION_ID, note);
+            Cursor cursor = getContentResolver().query(DatabaseContract.CONTENT_URI,
+                    projection,
+                    TaskColumns._ID + " IN (" + ReminderQueue.placeholders(args.length) + ")",
+                    args,
+                    null);
+            try {
+                while (cursor != null && cursor.moveToNext()) {
+                    descriptions.put(cursor.getLong(0), cursor.getString(1));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+
+        return descriptions;
+    }
+
+    //This is a deep link intent, and needs the task stack
+    private PendingIntent getTaskIntent(Uri uri) {
+        Intent action = new Intent(this, MainActivity.class);
+        action.setData(uri);
+        return TaskStackBuilder.create(this)
+                .addNextIntentWithParentStack(action)
+                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
     }
 }
@@ -0,0 +1,210 @@
+package com.google.developer.taskmaker.reminders;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.google.developer.taskmaker.data.DatabaseContract;
+import com.google.developer.taskmaker.data.DatabaseContract.ReminderColumns;
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Persisted queue of pending reminders, ordered by fire time through an index.
+ * Adding, removing and peeking at the earliest entry are all B-tree operations.
+ */
+class ReminderQueue {
+    private static final String TAG = ReminderQueue.class.getSimpleName();
+
+    /* Returned when no reminder is pending */
+    static final long NONE = -1;
+
+    //Stay well below SQLite's limit on bound parameters
+    static final int MAX_IDS_PER_STATEMENT = 500;
+
+    private static final String SORT_BY_FIRE_TIME = ReminderColumns.FIRE_TIME + " ASC";
+
+    /**
+     * Add a reminder for a task, replacing any reminder it already had.
+     */
+    static void enqueue(Context context, long taskId, long fireTime) {
+        ContentValues values = new ContentValues(3);
+        values.put(ReminderColumns.TASK_ID, taskId);
+        values.put(ReminderColumns.FIRE_TIME, fireTime);
+        values.put(ReminderColumns.LOCAL_TIME, toLocalTime(fireTime, TimeZone.getDefault()));
+        context.getContentResolver().insert(DatabaseContract.REMINDERS_URI, values);
+    }
+
+    /**
+     * Remove the pending reminder of a task, if any.
+     */
+    static void remove(Context context, long taskId) {
+        context.getContentResolver().delete(
+                ContentUris.withAppendedId(DatabaseContract.REMINDERS_URI, taskId), null, null);
+    }
+
+    /**
+     * Return the fire time of the earliest pending reminder for a task with the
+     * given priority, or {@link #NONE}.
+     */
+    static long peekNextFireTime(Context context, boolean isPriority) {
+        /*
+         * Walks the fire time index in order and checks the task of each reminder
+         * through the tasks primary key, stopping at the first match. A plain IN
+         * subquery would instead scan the whole tasks table on every call.
+         */
+        String selection = String.format("EXISTS (SELECT 1 FROM %s WHERE %s = %s.%s AND %s = ?)",
+                DatabaseContract.TABLE_TASKS,
+                TaskColumns._ID,
+                DatabaseContract.TABLE_REMINDERS,
+                ReminderColumns.TASK_ID,
+                TaskColumns.IS_PRIORITY);
+        Cursor cursor = context.getContentResolver().query(
+                DatabaseContract.REMINDERS_URI.buildUpon()
+                        .appendQueryParameter(DatabaseContract.PARAM_LIMIT, "1")
+                        .build(),
+                new String[]{ReminderColumns.FIRE_TIME},
+                selection,
+                new String[]{isPriority ? "1" : "0"},
+                SORT_BY_FIRE_TIME);
+
+        try {
+            return (cursor != null && cursor.moveToFirst()) ? cursor.getLong(0) : NONE;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Remove and return the ids of every task whose reminder is due.
+     *
+     * @param now Current wall clock time.
+     */
+    static long[] takeDue(Context context, long now) {
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor = resolver.query(DatabaseContract.REMINDERS_URI,
+                new String[]{ReminderColumns.TASK_ID},
+                ReminderColumns.FIRE_TIME + " <= ?",
+                new String[]{String.valueOf(now)},
+                SORT_BY_FIRE_TIME);
+
+        long[] taskIds;
+        try {
+            if (cursor == null) {
+                return new long[0];
+            }
+            taskIds = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                taskIds[i] = cursor.getLong(0);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        //Delete exactly the rows read above, in bounded statements. A reminder
+        //re-enqueued since then has a later fire time and is kept
+        for (int start = 0; start < taskIds.length; start += MAX_IDS_PER_STATEMENT) {
+            int end = Math.min(taskIds.length, start + MAX_IDS_PER_STATEMENT);
+            String[] args = new String[end - start + 1];
+            for (int i = start; i < end; i++) {
+                args[i - start] = String.valueOf(taskIds[i]);
+            }
+            args[args.length - 1] = String.valueOf(now);
+            resolver.delete(DatabaseContract.REMINDERS_URI,
+                    ReminderColumns.TASK_ID + " IN (" + placeholders(end - start) + ") AND "
+                            + ReminderColumns.FIRE_TIME + " <= ?",
+                    args);
+        }
+
+        return taskIds;
+    }
+
+    /**
+     * Move every reminder to the same local wall clock time in the given time
+     * zone. A reminder can move from the past into the future or the other way,
+     * so all reminders with a local time are read and compared to {@code now}
+     * only once their new fire time is known. Those that moved, unless they stay
+     * in the past, are rewritten in a single transaction.
+     *
+     * @return The number of reminders that moved.
+     */
+    static int retime(Context context, long now, TimeZone timeZone) {
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor = resolver.query(DatabaseContract.REMINDERS_URI,
+                new String[]{ReminderColumns.TASK_ID,
+                        ReminderColumns.FIRE_TIME,
+                        ReminderColumns.LOCAL_TIME},
+                ReminderColumns.LOCAL_TIME + " IS NOT NULL",
+                null,
+                null);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        try {
+            while (cursor != null && cursor.moveToNext()) {
+                long localTime = cursor.getLong(2);
+                long fireTime = fromLocalTime(localTime, timeZone);
+                long previousFireTime = cursor.getLong(1);
+                //Past reminders that stay in the past are due either way
+                boolean upcoming = fireTime > now || previousFireTime > now;
+                if (fireTime != previousFireTime && upcoming) {
+                    //Replaces the reminder of the same task
+                    operations.add(ContentProviderOperation.newInsert(DatabaseContract.REMINDERS_URI)
+                            .withValue(ReminderColumns.TASK_ID, cursor.getLong(0))
+                            .withValue(ReminderColumns.FIRE_TIME, fireTime)
+                            .withValue(ReminderColumns.LOCAL_TIME, localTime)
+                            .build());
+                }
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        if (operations.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            resolver.applyBatch(DatabaseContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.w(TAG, "Error moving reminders", e);
+            return 0;
+        }
+        return operations.size();
+    }
+
+    /* Wall clock time of an instant, expressed as if it were UTC */
+    static long toLocalTime(long time, TimeZone timeZone) {
+        return time + timeZone.getOffset(time);
+    }
+
+    /* Instant at which the wall clock shows a local time */
+    static long fromLocalTime(long localTime, TimeZone timeZone) {
+        //The standard offset is close enough to find the daylight offset in effect
+        return localTime - timeZone.getOffset(localTime - timeZone.getRawOffset());
+    }
+
+    /* Build "?,?,...,?" for an IN clause */
+    static String placeholders(int count) {
+        char[] chars = new char[Math.max(0, count * 2 - 1)];
+        Arrays.fill(chars, ',');
+        for (int i = 0; i < chars.length; i += 2) {
+            chars[i] = '?';
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,42 @@
+package com.google.developer.taskmaker.reminders;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.google.developer.taskmaker.data.DataExecutor;
+import com.google.developer.taskmaker.views.DueDateFormatter;
+
+/*
+ * System alarms do not survive a reboot, and reminders should follow the local
+ * wall clock when the time or time zone changes. Rebuilds the armed alarms
+ * from the persisted reminder queue in each of these cases.
+ */
+public class ReminderRebuildReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_TIME_CHANGED.equals(action)
+                || Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            //Cached relative date labels were computed against the old clock
+            DueDateFormatter.getInstance(context).invalidate();
+        } else if (!Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            return;
+        }
+
+        //Reads the database, so keep the broadcast alive off the main thread
+        final PendingResult result = goAsync();
+        final Context appContext = context.getApplicationContext();
+        DataExecutor.getInstance().write(AlarmScheduler.WRITE_KEY, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AlarmScheduler.rebuildAlarms(appContext);
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package com.google.developer.taskmaker.views;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+/**
+ * Shared cache of relative due date strings. Due dates are normalized to noon,
+ * so a list holds very few distinct values and most lookups are hits.
+ *
+ * The formatted text depends on the current time, so the whole cache is flushed
+ * whenever the wall clock enters a new minute (and with it a new day).
+ */
+public class DueDateFormatter {
+
+    /* Produces the display text for a due date */
+    public interface Format {
+        CharSequence format(long dateMillis);
+    }
+
+    /* Source of the current time */
+    public interface Clock {
+        long now();
+    }
+
+    //Small enough that a linear scan beats hashing and boxing the keys
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private static DueDateFormatter sInstance;
+
+    private final Format mFormat;
+    private final Clock mClock;
+
+    /* Cache entries, least recently used is evicted first */
+    private final long[] mKeys;
+    private final CharSequence[] mValues;
+    private final long[] mLastUsed;
+    private int mSize;
+    private long mUseCounter;
+
+    //Minute of the wall clock the cached values were formatted in
+    private long mMinuteBucket = Long.MIN_VALUE;
+
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Return the formatter shared by every screen of the app.
+     */
+    public static synchronized DueDateFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new DueDateFormatter(DEFAULT_CAPACITY,
+                    new Format() {
+                        @Override
+                        public CharSequence format(long dateMillis) {
+                            return DateUtils.getRelativeTimeSpanString(appContext, dateMillis);
+                        }
+                    },
+                    new Clock() {
+                        @Override
+                        public long now() {
+                            return System.currentTimeMillis();
+                        }
+                    });
+        }
+        return sInstance;
+    }
+
+    /*package*/ DueDateFormatter(int capacity, Format format, Clock clock) {
+        mFormat = format;
+        mClock = clock;
+        mKeys = new long[capacity];
+        mValues = new CharSequence[capacity];
+        mLastUsed = new long[capacity];
+    }
+
+    /**
+     * Return the relative display text for a due date, formatting it only if
+     * it is not already cached for the current minute.
+     */
+    public synchronized CharSequence format(long dateMillis) {
+        long bucket = mClock.now() / DateUtils.MINUTE_IN_MILLIS;
+        if (bucket != mMinuteBucket) {
+            clear();
+            mMinuteBucket = bucket;
+        }
+
+        for (int i = 0; i < mSize; i++) {
+            if (mKeys[i] == dateMillis) {
+                mHits++;
+                mLastUsed[i] = ++mUseCounter;
+                return mValues[i];
+            }
+        }
+
+        mMisses++;
+        CharSequence formatted = mFormat.format(dateMillis);
+        int slot = (mSize < mKeys.length) ? mSize++ : leastRecentlyUsed();
+        mKeys[slot] = dateMillis;
+        mValues[slot] = formatted;
+        mLastUsed[slot] = ++mUseCounter;
+
+        return formatted;
+    }
+
+    /**
+     * Drop all cached values, for example after the time zone changed.
+     */
+    public synchronized void invalidate() {
+        clear();
+        mMinuteBucket = Long.MIN_VALUE;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    private int leastRecentlyUsed() {
+        int oldest = 0;
+        for (int i = 1; i < mSize; i++) {
+            if (mLastUsed[i] < mLastUsed[oldest]) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    private void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mValues[i] = null;
+        }
+        mSize = 0;
+    }
+}
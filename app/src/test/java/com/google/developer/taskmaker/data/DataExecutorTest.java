@@ -0,0 +1,172 @@
+package com.google.developer.taskmaker.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DataExecutorTest {
+
+    private static final int WRITES = 1000;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void writesWithSameKey_runInSubmissionOrder() throws Exception {
+        DataExecutor executor = new DataExecutor(2, 4);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(WRITES);
+
+        for (int i = 0; i < WRITES; i++) {
+            final int write = i;
+            executor.write("task/1", new Runnable() {
+                @Override
+                public void run() {
+                    order.add(write);
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < WRITES; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void writesWithSameKey_neverOverlap() throws Exception {
+        DataExecutor executor = new DataExecutor(2, 4);
+        final int[] running = new int[1];
+        final boolean[] overlapped = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(WRITES);
+
+        for (int i = 0; i < WRITES; i++) {
+            //Interleave another key, so the pool threads are all in use
+            executor.write("task/2", new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            executor.write("task/1", new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (running) {
+                        overlapped[0] |= ++running[0] > 1;
+                    }
+                    Thread.yield();
+                    synchronized (running) {
+                        running[0]--;
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(overlapped[0]);
+    }
+
+    @Test
+    public void slowWrite_doesNotBlockOtherKeys() throws Exception {
+        DataExecutor executor = new DataExecutor(1, 2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch otherDone = new CountDownLatch(1);
+
+        executor.write("cleanup", new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+        executor.write("task/1", new Runnable() {
+            @Override
+            public void run() {
+                otherDone.countDown();
+            }
+        });
+
+        try {
+            assertTrue(otherDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void cancelledWrite_isSkippedAndLaterWritesRun() throws Exception {
+        DataExecutor executor = new DataExecutor(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final boolean[] cancelledRan = new boolean[1];
+        final CountDownLatch lastDone = new CountDownLatch(1);
+
+        executor.write("task/1", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(release);
+            }
+        });
+        Future<?> cancelled = executor.write("task/1", new Runnable() {
+            @Override
+            public void run() {
+                cancelledRan[0] = true;
+            }
+        });
+        executor.write("task/1", new Runnable() {
+            @Override
+            public void run() {
+                lastDone.countDown();
+            }
+        });
+
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, executor.getQueueDepth(DataExecutor.LANE_WRITE));
+        assertTrue(cancelled.cancel(false));
+        release.countDown();
+
+        assertTrue(lastDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(cancelledRan[0]);
+        assertEquals(0, executor.getQueueDepth(DataExecutor.LANE_WRITE));
+    }
+
+    @Test
+    public void lanes_runOnNamedThreads() throws Exception {
+        DataExecutor executor = new DataExecutor(1, 1);
+        final String[] names = new String[2];
+
+        executor.read(new Runnable() {
+            @Override
+            public void run() {
+                names[0] = Thread.currentThread().getName();
+            }
+        }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        executor.write("task/1", new Runnable() {
+            @Override
+            public void run() {
+                names[1] = Thread.currentThread().getName();
+            }
+        }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(names[0], names[0].startsWith("TaskMaker-read-"));
+        assertTrue(names[1], names[1].startsWith("TaskMaker-write-"));
+        assertEquals(1, executor.getCompletedCount(DataExecutor.LANE_READ));
+        assertEquals(1, executor.getCompletedCount(DataExecutor.LANE_WRITE));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.google.developer.taskmaker.data;
+
+import android.database.Cursor;
+
+import com.google.developer.taskmaker.data.DatabaseContract.TaskColumns;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class TaskSnapshotTest {
+
+    private static final int ROWS = 10000;
+
+    private static final List<String> COLUMNS = Arrays.asList(
+            TaskColumns._ID,
+            TaskColumns.DESCRIPTION,
+            TaskColumns.IS_COMPLETE,
+            TaskColumns.IS_PRIORITY,
+            TaskColumns.DUE_DATE);
+
+    @Test
+    public void fromCursor_copiesEveryRow() {
+        TaskSnapshot snapshot = TaskSnapshot.fromCursor(fakeCursor(ROWS));
+
+        assertEquals(ROWS, snapshot.getCount());
+        assertEquals(42L, snapshot.getId(41));
+        assertEquals("Task 41", snapshot.getDescription(41));
+        assertTrue(snapshot.isComplete(41));
+        assertFalse(snapshot.isPriority(41));
+        assertFalse(snapshot.hasDueDate(0));
+        assertEquals(1000L * 41, snapshot.getDueDate(41));
+    }
+
+    @Test
+    public void append_keepsRowOrder() {
+        TaskSnapshot first = TaskSnapshot.fromCursor(fakeCursor(3));
+        TaskSnapshot both = first.append(TaskSnapshot.fromCursor(fakeCursor(2)));
+
+        assertEquals(5, both.getCount());
+        assertEquals(3L, both.getId(2));
+        assertEquals(1L, both.getId(3));
+        assertTrue(both.contentEquals(3, first, 0));
+    }
+
+    @Test
+    public void writeTo_roundTripsLeadingRows() throws IOException {
+        TaskSnapshot snapshot = TaskSnapshot.fromCursor(fakeCursor(50));
+
+        TaskSnapshot read = TaskSnapshot.readFrom(input(write(snapshot, 20)), 20);
+
+        assertEquals(20, read.getCount());
+        for (int i = 0; i < read.getCount(); i++) {
+            assertEquals(snapshot.getId(i), read.getId(i));
+            assertEquals(snapshot.getContentHash(i), read.getContentHash(i));
+            assertTrue(read.contentEquals(i, snapshot, i));
+        }
+        assertFalse(read.hasDueDate(0));
+    }
+
+    @Test
+    public void readFrom_rejectsTruncatedInput() throws IOException {
+        byte[] bytes = write(TaskSnapshot.fromCursor(fakeCursor(5)), 5);
+
+        try {
+            TaskSnapshot.readFrom(new DataInputStream(
+                    new ByteArrayInputStream(bytes, 0, bytes.length - 1)), 5);
+            fail("Read a truncated snapshot");
+        } catch (EOFException expected) {
+            //The store discards the file
+        }
+    }
+
+    @Test
+    public void readFrom_rejectsRowCountAboveLimit() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(Integer.MAX_VALUE);
+
+        try {
+            TaskSnapshot.readFrom(input(bytes.toByteArray()), 20);
+            fail("Read a corrupt row count");
+        } catch (IOException expected) {
+            //Rejected before the rows are allocated
+        }
+    }
+
+    private static byte[] write(TaskSnapshot snapshot, int maxRows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes), maxRows);
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /*
+     * Covers the snapshot reads only. The views set by TaskAdapter.onBindViewHolder
+     * need a device, and cached due date lookups are covered by DueDateFormatterTest.
+     */
+    @Test
+    public void readingSnapshotRows_doesNotAllocate() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        long thread = Thread.currentThread().getId();
+
+        TaskSnapshot snapshot = TaskSnapshot.fromCursor(fakeCursor(ROWS));
+
+        //Warm up so class loading and compilation aren't counted
+        for (int i = 0; i < 5; i++) {
+            readAll(snapshot);
+        }
+
+        //Cost of the measurement itself
+        long overheadStart = bean.getThreadAllocatedBytes(thread);
+        long overhead = bean.getThreadAllocatedBytes(thread) - overheadStart;
+
+        long start = bean.getThreadAllocatedBytes(thread);
+        long checksum = readAll(snapshot);
+        long allocated = bean.getThreadAllocatedBytes(thread) - start - overhead;
+
+        assertTrue(checksum != 0);
+        //Even one small object per row would be several bytes per row
+        assertTrue("Allocated " + allocated + " bytes reading " + ROWS + " rows",
+                allocated < ROWS);
+    }
+
+    /* Read every snapshot attribute a list row is bound from */
+    private static long readAll(TaskSnapshot snapshot) {
+        long checksum = 0;
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            checksum += snapshot.getId(i);
+            if (snapshot.isComplete(i)) {
+                checksum++;
+            }
+            if (snapshot.isPriority(i)) {
+                checksum--;
+            }
+            if (snapshot.hasDueDate(i)) {
+                checksum ^= snapshot.getDueDate(i);
+            }
+            checksum += snapshot.getDescription(i).length();
+        }
+        return checksum;
+    }
+
+    /* Minimal in-memory task cursor, row i has id i + 1 */
+    private static Cursor fakeCursor(final int rows) {
+        InvocationHandler handler = new InvocationHandler() {
+            private int mPosition = -1;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getCount":
+                        return rows;
+                    case "moveToFirst":
+                        mPosition = 0;
+                        return rows > 0;
+                    case "moveToNext":
+                        mPosition++;
+                        return mPosition < rows;
+                    case "getColumnIndexOrThrow":
+                    case "getColumnIndex":
+                        return COLUMNS.indexOf((String) args[0]);
+                    case "getInt":
+                    case "getLong":
+                        long value = valueAt((Integer) args[0]);
+                        return method.getName().equals("getInt") ? (Object) (int) value : value;
+                    case "isNull":
+                        return COLUMNS.get((Integer) args[0]).equals(TaskColumns.DUE_DATE)
+                                && mPosition == 0;
+                    case "getString":
+                        return "Task " + mPosition;
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+
+            private long valueAt(int column) {
+                switch (COLUMNS.get(column)) {
+                    case TaskColumns._ID:
+                        return mPosition + 1;
+                    case TaskColumns.IS_COMPLETE:
+                        return mPosition % 2;
+                    case TaskColumns.IS_PRIORITY:
+                        return (mPosition % 3 == 0) ? 1 : 0;
+                    case TaskColumns.DUE_DATE:
+                        //Row 0 has no due date, stored as NULL which reads as 0
+                        return 1000L * mPosition;
+                    default:
+                        throw new IllegalArgumentException("Not a numeric column");
+                }
+            }
+        };
+
+        return (Cursor) Proxy.newProxyInstance(Cursor.class.getClassLoader(),
+                new Class<?>[]{Cursor.class}, handler);
+    }
+}
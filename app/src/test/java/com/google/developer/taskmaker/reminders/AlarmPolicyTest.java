@@ -0,0 +1,70 @@
+package com.google.developer.taskmaker.reminders;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlarmPolicyTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long WINDOW = 15 * MINUTE;
+    private static final long TOLERANCE = MINUTE;
+    private static final long NOW = 1500000000000L;
+
+    private final AlarmPolicy mPolicy = new AlarmPolicy(WINDOW, TOLERANCE);
+
+    @Test
+    public void emptyQueue_registersNoAlarm() {
+        AlarmPolicy.Plan plan = mPolicy.plan(ReminderQueue.NONE, ReminderQueue.NONE);
+
+        assertEquals(AlarmPolicy.MODE_NONE, plan.getFirstMode());
+        assertEquals(0, plan.getAlarmCount());
+    }
+
+    @Test
+    public void priorityReminder_isExact() {
+        AlarmPolicy.Plan plan = mPolicy.plan(NOW + MINUTE, ReminderQueue.NONE);
+
+        assertEquals(AlarmPolicy.MODE_EXACT, plan.getFirstMode());
+        assertEquals(NOW + MINUTE, plan.exactTime);
+        assertEquals(1, plan.getAlarmCount());
+    }
+
+    @Test
+    public void regularReminder_isWindowed() {
+        AlarmPolicy.Plan plan = mPolicy.plan(ReminderQueue.NONE, NOW + MINUTE);
+
+        assertEquals(AlarmPolicy.MODE_WINDOWED, plan.getFirstMode());
+        assertEquals(NOW + MINUTE, plan.windowStart);
+        assertEquals(WINDOW, plan.windowLength);
+        assertEquals(1, plan.getAlarmCount());
+    }
+
+    @Test
+    public void regularReminderNearPriority_sharesExactAlarm() {
+        //Due shortly before the priority reminder, and may be deferred until then
+        AlarmPolicy.Plan plan = mPolicy.plan(NOW + 10 * MINUTE, NOW + 5 * MINUTE);
+        assertTrue(plan.hasExactAlarm());
+        assertFalse(plan.hasWindowedAlarm());
+        assertEquals(1, plan.getAlarmCount());
+
+        //Due just after, and taken within the delivery tolerance
+        plan = mPolicy.plan(NOW + 10 * MINUTE, NOW + 10 * MINUTE + TOLERANCE);
+        assertEquals(1, plan.getAlarmCount());
+    }
+
+    @Test
+    public void distantReminders_armBothModes() {
+        //Regular reminder cannot be deferred until the priority one
+        AlarmPolicy.Plan plan = mPolicy.plan(NOW + 60 * MINUTE, NOW + MINUTE);
+        assertEquals(AlarmPolicy.MODE_WINDOWED, plan.getFirstMode());
+        assertEquals(2, plan.getAlarmCount());
+
+        //Regular reminder is after the priority one and its tolerance
+        plan = mPolicy.plan(NOW + MINUTE, NOW + 60 * MINUTE);
+        assertEquals(AlarmPolicy.MODE_EXACT, plan.getFirstMode());
+        assertEquals(2, plan.getAlarmCount());
+    }
+}
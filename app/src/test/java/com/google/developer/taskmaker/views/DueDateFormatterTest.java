@@ -0,0 +1,132 @@
+package com.google.developer.taskmaker.views;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class DueDateFormatterTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    //Noon on some day, the way due dates are stored
+    private static final long NOON = 1500000000000L / DAY * DAY + 12 * 60 * MINUTE;
+
+    /* Counts how often the real formatting work is done */
+    private static class CountingFormat implements DueDateFormatter.Format {
+        int calls;
+
+        @Override
+        public CharSequence format(long dateMillis) {
+            calls++;
+            return "formatted " + dateMillis;
+        }
+    }
+
+    /* Clock that only moves when told to */
+    private static class FixedClock implements DueDateFormatter.Clock {
+        long now = NOON - 3 * DAY;
+
+        @Override
+        public long now() {
+            return now;
+        }
+    }
+
+    @Test
+    public void listOfTenThousandRows_isMostlyHits() {
+        CountingFormat format = new CountingFormat();
+        DueDateFormatter formatter = new DueDateFormatter(64, format, new FixedClock());
+
+        //10k rows spread over 30 distinct due days
+        int rows = 10000;
+        for (int i = 0; i < rows; i++) {
+            formatter.format(NOON + (i % 30) * DAY);
+        }
+
+        assertEquals(30, format.calls);
+        assertEquals(30, formatter.getMissCount());
+        assertEquals(rows - 30, formatter.getHitCount());
+        double hitRate = formatter.getHitCount() / (double) rows;
+        assertTrue("Hit rate " + hitRate, hitRate > 0.99);
+    }
+
+    @Test
+    public void minuteRollover_invalidatesCache() {
+        CountingFormat format = new CountingFormat();
+        FixedClock clock = new FixedClock();
+        DueDateFormatter formatter = new DueDateFormatter(64, format, clock);
+
+        formatter.format(NOON);
+        formatter.format(NOON);
+        assertEquals(1, format.calls);
+
+        clock.now += MINUTE;
+        formatter.format(NOON);
+        assertEquals(2, format.calls);
+
+        formatter.invalidate();
+        formatter.format(NOON);
+        assertEquals(3, format.calls);
+    }
+
+    @Test
+    public void fullCache_evictsLeastRecentlyUsed() {
+        CountingFormat format = new CountingFormat();
+        DueDateFormatter formatter = new DueDateFormatter(2, format, new FixedClock());
+
+        formatter.format(NOON);
+        formatter.format(NOON + DAY);
+        //Touch the first date so the second one is the eldest
+        formatter.format(NOON);
+        formatter.format(NOON + 2 * DAY);
+        assertEquals(3, format.calls);
+
+        formatter.format(NOON);
+        assertEquals(3, format.calls);
+        formatter.format(NOON + DAY);
+        assertEquals(4, format.calls);
+    }
+
+    @Test
+    public void cachedDates_formatWithoutAllocating() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        long thread = Thread.currentThread().getId();
+
+        DueDateFormatter formatter =
+                new DueDateFormatter(64, new CountingFormat(), new FixedClock());
+        int rows = 10000;
+
+        //Warm up so the misses, class loading and compilation aren't counted
+        for (int i = 0; i < 5; i++) {
+            formatAll(formatter, rows);
+        }
+
+        //Cost of the measurement itself
+        long overheadStart = bean.getThreadAllocatedBytes(thread);
+        long overhead = bean.getThreadAllocatedBytes(thread) - overheadStart;
+
+        long start = bean.getThreadAllocatedBytes(thread);
+        int length = formatAll(formatter, rows);
+        long allocated = bean.getThreadAllocatedBytes(thread) - start - overhead;
+
+        assertTrue(length > 0);
+        //Even one small object per row would be several bytes per row
+        assertTrue("Allocated " + allocated + " bytes formatting " + rows + " rows",
+                allocated < rows);
+    }
+
+    /* Format the due dates of a list spread over 30 days */
+    private static int formatAll(DueDateFormatter formatter, int rows) {
+        int length = 0;
+        for (int i = 0; i < rows; i++) {
+            length += formatter.format(NOON + (i % 30) * DAY).length();
+        }
+        return length;
+    }
+}